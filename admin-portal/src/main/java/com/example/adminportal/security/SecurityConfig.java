@@ -1,5 +1,6 @@
 package com.example.adminportal.security;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -9,20 +10,55 @@ import org.springframework.http.HttpMethod;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
+import org.springframework.security.oauth2.server.resource.authentication.JwtIssuerAuthenticationManagerResolver;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtDecoders;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.SupplierJwtDecoder;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableMethodSecurity
 public class SecurityConfig {
 
+    @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
+    private String keycloakIssuer;
+
+    @Value("${payment.jwt.issuer:payment-service}")
+    private String paymentIssuer;
+
+    @Value("${payment.jwt.jwk-set-uri:}")
+    private String paymentJwkSetUri;
+
+    @Value("${payment.jwt.audience:admin-portal}")
+    private String paymentAudience;
+
+    private final PaymentRevocationList paymentRevocationList;
+
+    public SecurityConfig(PaymentRevocationList paymentRevocationList) {
+        this.paymentRevocationList = paymentRevocationList;
+    }
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -37,12 +73,55 @@ public class SecurityConfig {
             )
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .oauth2ResourceServer(oauth2 -> oauth2
-                .jwt(jwt -> jwt.jwtAuthenticationConverter(jwtAuthenticationConverter()))
+                .authenticationManagerResolver(authenticationManagerResolver())
             );
 
         return http.build();
     }
 
+    /**
+     * Accept Keycloak tokens and payment-service tokens, picking the verifier by issuer.
+     * payment-service tokens are checked against its JWKS, which Nimbus caches and
+     * re-fetches when it sees an unknown kid, so no call to payment-service per request.
+     * They must also be access tokens issued for admin-portal and not on payment-service's
+     * polled revocation list.
+     */
+    @Bean
+    public JwtIssuerAuthenticationManagerResolver authenticationManagerResolver() {
+        Map<String, AuthenticationManager> managers = new HashMap<>();
+        managers.put(keycloakIssuer, jwtAuthenticationManager(
+            new SupplierJwtDecoder(() -> JwtDecoders.fromIssuerLocation(keycloakIssuer))));
+
+        if (paymentJwkSetUri != null && !paymentJwkSetUri.isBlank()) {
+            NimbusJwtDecoder paymentDecoder = NimbusJwtDecoder.withJwkSetUri(paymentJwkSetUri)
+                .jwsAlgorithm(SignatureAlgorithm.RS256)
+                .build();
+            paymentDecoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                JwtValidators.createDefaultWithIssuer(paymentIssuer),
+                new JwtClaimValidator<List<String>>(JwtClaimNames.AUD,
+                    aud -> aud != null && aud.contains(paymentAudience)),
+                new JwtClaimValidator<String>("type", "access"::equals),
+                this::validateNotRevoked));
+            managers.put(paymentIssuer, jwtAuthenticationManager(paymentDecoder));
+        }
+
+        return new JwtIssuerAuthenticationManagerResolver(managers::get);
+    }
+
+    private OAuth2TokenValidatorResult validateNotRevoked(Jwt jwt) {
+        if (paymentRevocationList.isRevoked(jwt)) {
+            return OAuth2TokenValidatorResult.failure(
+                new OAuth2Error(OAuth2ErrorCodes.INVALID_TOKEN, "Token has been revoked", null));
+        }
+        return OAuth2TokenValidatorResult.success();
+    }
+
+    private AuthenticationManager jwtAuthenticationManager(JwtDecoder decoder) {
+        JwtAuthenticationProvider provider = new JwtAuthenticationProvider(decoder);
+        provider.setJwtAuthenticationConverter(jwtAuthenticationConverter());
+        return provider::authenticate;
+    }
+
     @Bean
     public JwtAuthenticationConverter jwtAuthenticationConverter() {
         JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
@@ -76,6 +155,12 @@ public class SecurityConfig {
             });
         }
         
+        // payment-service tokens carry a flat roles claim (ADMIN, REFUND_APPROVER, USER)
+        Object flatRoles = jwt.getClaims().get("roles");
+        if (flatRoles instanceof java.util.Collection<?> roles) {
+            roles.forEach(role -> authorities.add(new SimpleGrantedAuthority("ROLE_" + role)));
+        }
+
         // Extract from groups
         Object groupsObj = jwt.getClaims().get("groups");
         if (groupsObj instanceof java.util.Collection<?> groups) {
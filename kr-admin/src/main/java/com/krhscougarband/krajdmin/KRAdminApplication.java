@@ -2,8 +2,10 @@ package com.krhscougarband.krajdmin;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class KRAdminApplication {
     public static void main(String[] args) {
         SpringApplication.run(KRAdminApplication.class, args);
@@ -0,0 +1,103 @@
+package com.krhscougarband.krajdmin.security;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.Key;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves JWT verification keys.
+ * Tokens without a kid are kr-admin's own HS512 tokens. Tokens with a kid were
+ * signed by payment-service and are verified against its published JWKS, which
+ * is cached here and re-fetched (throttled) when an unknown kid shows up.
+ */
+@Component
+public class JwksKeyLocator extends LocatorAdapter<Key> {
+
+    private static final Logger log = LoggerFactory.getLogger(JwksKeyLocator.class);
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @Value("${jwt.secret}")
+    private String jwtSecret;
+
+    @Value("${jwt.jwks.uri:}")
+    private String jwksUri;
+
+    @Value("${jwt.jwks.cache-ttl-ms:600000}")
+    private long cacheTtlMs;
+
+    @Value("${jwt.jwks.min-refresh-interval-ms:30000}")
+    private long minRefreshIntervalMs;
+
+    private volatile Map<String, Key> keys = Map.of();
+    private volatile long lastFetch;
+
+    @Override
+    protected Key locate(JwsHeader header) {
+        String kid = header.getKeyId();
+        if (kid == null) {
+            return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        }
+
+        long sinceFetch = System.currentTimeMillis() - lastFetch;
+        Key key = keys.get(kid);
+        if ((key == null || sinceFetch > cacheTtlMs) && sinceFetch > minRefreshIntervalMs) {
+            refresh();
+            key = keys.get(kid);
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Unknown signing key: " + kid);
+        }
+        return key;
+    }
+
+    private synchronized void refresh() {
+        if (jwksUri == null || jwksUri.isBlank()) {
+            return;
+        }
+        if (System.currentTimeMillis() - lastFetch <= minRefreshIntervalMs) {
+            return; // another thread just refreshed
+        }
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(jwksUri))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                log.warn("JWKS fetch from {} returned {}", jwksUri, response.statusCode());
+                return;
+            }
+            JwkSet set = Jwks.setParser().build().parse(response.body());
+            Map<String, Key> loaded = new HashMap<>();
+            for (Jwk<?> jwk : set.getKeys()) {
+                if (jwk.getId() != null) {
+                    loaded.put(jwk.getId(), jwk.toKey());
+                }
+            }
+            keys = loaded;
+        } catch (Exception e) {
+            log.warn("Could not refresh JWKS from {}: {}", jwksUri, e.getMessage());
+        } finally {
+            lastFetch = System.currentTimeMillis();
+        }
+    }
+}
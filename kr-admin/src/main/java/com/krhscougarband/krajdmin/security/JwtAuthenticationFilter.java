@@ -1,9 +1,13 @@
 package com.krhscougarband.krajdmin.security;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import com.krhscougarband.krajdmin.entities.User;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -12,15 +16,27 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtTokenProvider jwtTokenProvider;
     private final UserDetailsService userDetailsService;
+    private final PaymentRevocationList revocationList;
 
-    public JwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider, UserDetailsService userDetailsService) {
+    @Value("${jwt.external.issuer:payment-service}")
+    private String externalIssuer;
+
+    @Value("${jwt.external.audience:kr-admin}")
+    private String externalAudience;
+
+    public JwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider, UserDetailsService userDetailsService,
+                                   PaymentRevocationList revocationList) {
         this.jwtTokenProvider = jwtTokenProvider;
         this.userDetailsService = userDetailsService;
+        this.revocationList = revocationList;
     }
 
     @Override
@@ -29,12 +45,23 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (jwt != null && jwtTokenProvider.validateToken(jwt)) {
-                String email = jwtTokenProvider.getEmailFromToken(jwt);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+            Jws<Claims> jws = jwt != null ? jwtTokenProvider.parseOrNull(jwt) : null;
+
+            if (jws != null && jwtTokenProvider.isExternal(jws) && !isAcceptedExternal(jwt, jws.getPayload())) {
+                jws = null;
+            }
+
+            if (jws != null) {
+                String email = jws.getPayload().getSubject();
 
-                UsernamePasswordAuthenticationToken authentication =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                UserDetails userDetails;
+                if (jwtTokenProvider.isExternal(jws)) {
+                    userDetails = externalPrincipal(email, jws.getPayload());
+                } else {
+                    userDetails = userDetailsService.loadUserByUsername(email);
+                }
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                        userDetails, null, userDetails.getAuthorities());
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             }
         } catch (Exception ex) {
@@ -44,6 +71,39 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * payment-service tokens are only trusted when they are access tokens issued
+     * for this service and are not on payment-service's revocation list (logged
+     * out, or issued before a logout-all).
+     */
+    private boolean isAcceptedExternal(String jwt, Claims claims) {
+        if (!"access".equals(claims.get("type"))) {
+            return false;
+        }
+        if (!externalIssuer.equals(claims.getIssuer())) {
+            return false;
+        }
+        Set<String> audience = claims.getAudience();
+        if (audience == null || !audience.contains(externalAudience)) {
+            return false;
+        }
+        return !revocationList.isRevoked(jwt, claims);
+    }
+
+    // Users signed in through payment-service have no kr-admin account; the principal
+    // is built from the verified claims and never persisted.
+    private UserPrincipal externalPrincipal(String email, Claims claims) {
+        Object roles = claims.get("roles");
+        Set<String> roleNames = roles instanceof Collection<?> values
+                ? values.stream().map(String::valueOf).collect(Collectors.toSet())
+                : Set.of();
+        return new UserPrincipal(User.builder()
+                .email(email)
+                .roles(roleNames)
+                .active(true)
+                .build());
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
@@ -1,6 +1,7 @@
 package com.krhscougarband.krajdmin.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -21,6 +22,12 @@ public class JwtTokenProvider {
     @Value("${jwt.expiration}")
     private long jwtExpirationMs;
 
+    private final JwksKeyLocator keyLocator;
+
+    public JwtTokenProvider(JwksKeyLocator keyLocator) {
+        this.keyLocator = keyLocator;
+    }
+
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("roles", userDetails.getAuthorities());
@@ -48,24 +55,36 @@ public class JwtTokenProvider {
     }
 
     public Boolean validateToken(String token) {
+        return parseOrNull(token) != null;
+    }
+
+    public Jws<Claims> parseOrNull(String token) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-            Jwts.parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
+            return parse(token);
         } catch (Exception e) {
-            return false;
+            return null;
         }
     }
 
-    private Claims getAllClaimsFromToken(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    /**
+     * Verify and parse a token. Own tokens are checked against the shared secret,
+     * payment-service tokens (identified by a kid header) against its cached JWKS.
+     */
+    public Jws<Claims> parse(String token) {
         return Jwts.parser()
-                .verifyWith(key)
+                .keyLocator(keyLocator)
                 .build()
-                .parseSignedClaims(token)
-                .getPayload();
+                .parseSignedClaims(token);
+    }
+
+    /**
+     * Whether the token was issued by payment-service rather than kr-admin.
+     */
+    public boolean isExternal(Jws<Claims> jws) {
+        return jws.getHeader().getKeyId() != null;
+    }
+
+    private Claims getAllClaimsFromToken(String token) {
+        return parse(token).getPayload();
     }
 }
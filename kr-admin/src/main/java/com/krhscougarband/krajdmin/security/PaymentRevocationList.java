@@ -0,0 +1,93 @@
+package com.krhscougarband.krajdmin.security;
+
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local copy of payment-service's revocation list (logged-out tokens and each
+ * user's logout-all generation), polled in the background so checking a token
+ * never calls payment-service. Tokens are listed by SHA-256 hash and users by
+ * the hash of their email. If a poll fails the last list is kept; without a
+ * list URI only signature, issuer, audience and expiry are checked.
+ */
+@Component
+public class PaymentRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentRevocationList.class);
+
+    private final RestClient restClient;
+
+    @Value("${jwt.revocation.uri:}")
+    private String revocationUri;
+
+    private volatile Set<String> revoked = Set.of();
+    private volatile Map<String, Integer> generations = Map.of();
+
+    public PaymentRevocationList() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Duration.ofSeconds(5));
+        requestFactory.setReadTimeout(Duration.ofSeconds(5));
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    @PostConstruct
+    void warnIfUnconfigured() {
+        if (revocationUri == null || revocationUri.isBlank()) {
+            log.warn("jwt.revocation.uri is not set; logged-out payment-service tokens stay valid until they expire");
+        }
+    }
+
+    public boolean isRevoked(String token, Claims claims) {
+        if (revoked.contains(hash(token))) {
+            return true;
+        }
+        Integer generation = claims.get("gen", Integer.class);
+        String subject = claims.getSubject();
+        int current = subject != null ? generations.getOrDefault(hash(subject), 0) : 0;
+        return (generation != null ? generation : 0) < current;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.poll-interval-ms:30000}")
+    public void refresh() {
+        if (revocationUri == null || revocationUri.isBlank()) {
+            return;
+        }
+        try {
+            Feed feed = restClient.get().uri(revocationUri).retrieve().body(Feed.class);
+            if (feed == null) {
+                return;
+            }
+            revoked = feed.revoked() != null ? Set.copyOf(feed.revoked()) : Set.of();
+            generations = feed.generations() != null ? Map.copyOf(feed.generations()) : Map.of();
+        } catch (Exception e) {
+            log.warn("Could not refresh token revocations from {}: {}", revocationUri, e.getMessage());
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    record Feed(Map<String, Integer> generations, List<String> revoked) {}
+}
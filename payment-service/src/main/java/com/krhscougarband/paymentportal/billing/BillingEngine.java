@@ -0,0 +1,257 @@
+package com.krhscougarband.paymentportal.billing;
+
+import com.krhscougarband.paymentportal.entities.Plan;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Charges a page of due plans and records the results.
+ * Charges run on virtual threads, capped by a semaphore and spaced by a
+ * rate limiter so we stay under the provider's request budget. Results are
+ * written once per page with JDBC batches: one insert for the payment logs and
+ * one update per outcome type for the plans.
+ */
+@Service
+public class BillingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(BillingEngine.class);
+
+    // ON CONFLICT covers a retry after a crash: Square returns the same payment id for the same idempotency key
+    private static final String INSERT_LOG =
+            "INSERT INTO payment_logs (id, plan_id, amount, payment_method, status, transaction_id, timestamp) " +
+            "VALUES (:id, :planId, :amount, 'CARD', :status, :transactionId, :timestamp) " +
+            "ON CONFLICT (transaction_id) DO NOTHING";
+
+    private static final String APPLY_CHARGE =
+            "UPDATE plans SET amount_paid = COALESCE(amount_paid, 0) + :amount, " +
+            "net_amount_paid = COALESCE(amount_paid, 0) + :amount - COALESCE(total_refunded, 0), " +
+            "status = CASE WHEN total_owed IS NOT NULL AND COALESCE(amount_paid, 0) + :amount >= total_owed " +
+            "              THEN 'COMPLETED' ELSE status END, " +
+            "next_charge_at = CASE WHEN total_owed IS NOT NULL AND COALESCE(amount_paid, 0) + :amount >= total_owed " +
+            "                      THEN NULL ELSE :nextChargeAt END, " +
+            "billing_lease_until = NULL, updated_at = :now, version = version + 1 WHERE id = :planId";
+
+    private static final String MARK_ERROR =
+            "UPDATE plans SET status = 'ERROR', billing_lease_until = NULL, updated_at = :now, " +
+            "version = version + 1 WHERE id = :planId";
+
+    private static final String MARK_COMPLETED =
+            "UPDATE plans SET status = 'COMPLETED', next_charge_at = NULL, billing_lease_until = NULL, " +
+            "updated_at = :now, version = version + 1 WHERE id = :planId";
+
+    private final PaymentGateway gateway;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RateLimiter rateLimiter;
+    private final Semaphore inFlight;
+    private final int maxAttempts;
+    private final Timer gatewayTimer;
+    private final Counter approvedCounter;
+    private final Counter declinedCounter;
+    private final Counter errorCounter;
+
+    public BillingEngine(PaymentGateway gateway,
+                         NamedParameterJdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${billing.gateway.requests-per-second:20}") double requestsPerSecond,
+                         @Value("${billing.gateway.max-concurrency:32}") int maxConcurrency,
+                         @Value("${billing.gateway.max-attempts:3}") int maxAttempts) {
+        this.gateway = gateway;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.rateLimiter = new RateLimiter(requestsPerSecond);
+        this.inFlight = new Semaphore(maxConcurrency);
+        this.maxAttempts = maxAttempts;
+        this.gatewayTimer = Timer.builder("billing.gateway.charge")
+                .description("Latency of a single gateway charge call")
+                .register(meterRegistry);
+        this.approvedCounter = Counter.builder("billing.charges").tag("outcome", "approved")
+                .description("Recurring charges by outcome").register(meterRegistry);
+        this.declinedCounter = Counter.builder("billing.charges").tag("outcome", "declined")
+                .description("Recurring charges by outcome").register(meterRegistry);
+        this.errorCounter = Counter.builder("billing.charges").tag("outcome", "error")
+                .description("Recurring charges by outcome").register(meterRegistry);
+    }
+
+    /**
+     * Charge every plan in the page and persist the outcomes. Only a declined
+     * card moves a plan to ERROR; plans that hit a transient or request error are
+     * left as they are, still leased, and get retried once the lease expires.
+     */
+    public void bill(List<Plan> plans) {
+        List<Outcome> outcomes = chargeAll(plans);
+        transactionTemplate.executeWithoutResult(status -> record(outcomes));
+    }
+
+    private List<Outcome> chargeAll(List<Plan> plans) {
+        List<Future<Outcome>> futures = new ArrayList<>(plans.size());
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("billing-", 0).factory())) {
+            for (Plan plan : plans) {
+                futures.add(executor.submit(() -> chargeWithPermit(plan)));
+            }
+        } // close() waits for every charge to finish
+
+        List<Outcome> outcomes = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Future<Outcome> future = futures.get(i);
+            outcomes.add(future.state() == Future.State.SUCCESS
+                    ? future.resultNow()
+                    : Outcome.error(plans.get(i), String.valueOf(future.exceptionNow())));
+        }
+        return outcomes;
+    }
+
+    private Outcome chargeWithPermit(Plan plan) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return charge(plan);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private Outcome charge(Plan plan) {
+        BigDecimal amount = amountDue(plan);
+        if (amount.signum() <= 0) {
+            return Outcome.nothingDue(plan);
+        }
+        ChargeRequest request = new ChargeRequest(
+                plan.getId(),
+                amount,
+                plan.getCurrency(),
+                plan.getOwner() != null ? plan.getOwner().getSquareCustomerId() : null,
+                plan.getSquareCardId(),
+                idempotencyKey(plan));
+
+        String lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            rateLimiter.acquire();
+            try {
+                ChargeResult result = gatewayTimer.record(() -> gateway.charge(request));
+                return new Outcome(plan, amount, result, null);
+            } catch (GatewayRateLimitedException e) {
+                rateLimiter.pause(e.getRetryAfter());
+                lastError = e.getMessage();
+            } catch (RuntimeException e) {
+                return Outcome.error(plan, e.getMessage());
+            }
+        }
+        return Outcome.error(plan, lastError);
+    }
+
+    private void record(List<Outcome> outcomes) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Outcome> charged = new ArrayList<>();
+        List<SqlParameterSource> logs = new ArrayList<>();
+        List<SqlParameterSource> declined = new ArrayList<>();
+        List<SqlParameterSource> completed = new ArrayList<>();
+
+        for (Outcome outcome : outcomes) {
+            UUID planId = outcome.plan().getId();
+            if (outcome.result() == null) {
+                if (outcome.error() == null) {
+                    completed.add(new MapSqlParameterSource("planId", planId).addValue("now", now));
+                } else {
+                    errorCounter.increment();
+                    log.warn("Charge for plan {} failed, will retry after lease expires: {}", planId, outcome.error());
+                }
+                continue;
+            }
+            ChargeResult result = outcome.result();
+            logs.add(new MapSqlParameterSource()
+                    .addValue("id", UUID.randomUUID())
+                    .addValue("planId", planId)
+                    .addValue("amount", outcome.amount())
+                    .addValue("status", result.success() ? "PAID" : "FAILED")
+                    .addValue("transactionId", result.transactionId())
+                    .addValue("timestamp", now));
+            if (result.success()) {
+                approvedCounter.increment();
+                charged.add(outcome);
+            } else {
+                declinedCounter.increment();
+                log.warn("Charge for plan {} declined: {}", planId, result.failureReason());
+                declined.add(new MapSqlParameterSource("planId", planId).addValue("now", now));
+            }
+        }
+
+        int[] inserted = jdbcTemplate.batchUpdate(INSERT_LOG, logs.toArray(SqlParameterSource[]::new));
+
+        // Only bump totals for payments that were not already recorded by an earlier attempt
+        List<SqlParameterSource> applied = new ArrayList<>();
+        int logIndex = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome.result() == null) {
+                continue;
+            }
+            boolean newRow = inserted[logIndex++] != 0;
+            if (outcome.result().success() && newRow) {
+                Plan plan = outcome.plan();
+                applied.add(new MapSqlParameterSource()
+                        .addValue("planId", plan.getId())
+                        .addValue("amount", outcome.amount())
+                        .addValue("nextChargeAt", Plan.nextBoundaryAfter(plan.getNextChargeAt(), plan.getFrequency(), now))
+                        .addValue("now", now));
+            } else if (outcome.result().success()) {
+                log.info("Charge {} for plan {} was already recorded", outcome.result().transactionId(), outcome.plan().getId());
+            }
+        }
+
+        jdbcTemplate.batchUpdate(APPLY_CHARGE, applied.toArray(SqlParameterSource[]::new));
+        jdbcTemplate.batchUpdate(MARK_ERROR, declined.toArray(SqlParameterSource[]::new));
+        jdbcTemplate.batchUpdate(MARK_COMPLETED, completed.toArray(SqlParameterSource[]::new));
+        log.info("Billing page: {} charged, {} declined, {} completed, {} retrying",
+                charged.size(), declined.size(), completed.size(),
+                outcomes.size() - charged.size() - declined.size() - completed.size());
+    }
+
+    private static BigDecimal amountDue(Plan plan) {
+        BigDecimal amount = plan.getAmount() != null ? plan.getAmount() : BigDecimal.ZERO;
+        if (plan.getTotalOwed() == null) {
+            return amount;
+        }
+        BigDecimal paid = plan.getAmountPaid() != null ? plan.getAmountPaid() : BigDecimal.ZERO;
+        // Last installment only charges what is left
+        return amount.min(plan.getTotalOwed().subtract(paid));
+    }
+
+    /**
+     * Stable per plan and billing cycle, so a retry of the same cycle reuses the key.
+     */
+    private static String idempotencyKey(Plan plan) {
+        String cycle = plan.getId() + "|" + plan.getNextChargeAt();
+        return UUID.nameUUIDFromBytes(cycle.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private record Outcome(Plan plan, BigDecimal amount, ChargeResult result, String error) {
+        static Outcome nothingDue(Plan plan) {
+            return new Outcome(plan, BigDecimal.ZERO, null, null);
+        }
+
+        static Outcome error(Plan plan, String error) {
+            return new Outcome(plan, null, null, error != null ? error : "unknown error");
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.krhscougarband.paymentportal.billing;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Amount is in the currency's smallest unit (cents), matching Plan.amount.
+ */
+public record ChargeRequest(UUID planId,
+                            BigDecimal amount,
+                            String currency,
+                            String customerId,
+                            String sourceId,
+                            String idempotencyKey) {}
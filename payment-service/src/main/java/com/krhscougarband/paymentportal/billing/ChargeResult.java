@@ -0,0 +1,12 @@
+package com.krhscougarband.paymentportal.billing;
+
+public record ChargeResult(boolean success, String transactionId, String failureReason) {
+
+    public static ChargeResult approved(String transactionId) {
+        return new ChargeResult(true, transactionId, null);
+    }
+
+    public static ChargeResult declined(String reason) {
+        return new ChargeResult(false, null, reason);
+    }
+}
@@ -0,0 +1,16 @@
+package com.krhscougarband.paymentportal.billing;
+
+import java.time.Duration;
+
+public class GatewayRateLimitedException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public GatewayRateLimitedException(Duration retryAfter) {
+        super("Payment provider rate limit hit, retry after " + retryAfter.toMillis() + "ms");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
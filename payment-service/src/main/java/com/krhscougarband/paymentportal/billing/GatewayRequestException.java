@@ -0,0 +1,19 @@
+package com.krhscougarband.paymentportal.billing;
+
+/**
+ * The provider refused the request itself (bad credentials, invalid request)
+ * rather than the customer's card. Nothing about the plan is at fault, so the
+ * billing run leaves it as it is.
+ */
+public class GatewayRequestException extends RuntimeException {
+    private final int statusCode;
+
+    public GatewayRequestException(int statusCode, String message) {
+        super("Payment provider rejected the request (" + statusCode + "): " + message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,65 @@
+package com.krhscougarband.paymentportal.billing;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gateway that never leaves the process, for local runs and tests
+ * (billing.gateway=fake). Charges are idempotent on the key, like Square.
+ */
+@Component
+@ConditionalOnProperty(name = "billing.gateway", havingValue = "fake")
+public class InMemoryPaymentGateway implements PaymentGateway {
+
+    private final Map<String, ChargeRequest> charges = new ConcurrentHashMap<>();
+    private final Map<String, String> transactionIds = new ConcurrentHashMap<>();
+    private final Set<UUID> declinedPlans = ConcurrentHashMap.newKeySet();
+    private final Map<String, BigDecimal> refunds = new ConcurrentHashMap<>();
+    private final Map<String, String> refundIds = new ConcurrentHashMap<>();
+
+    @Override
+    public ChargeResult charge(ChargeRequest request) {
+        if (declinedPlans.contains(request.planId())) {
+            return ChargeResult.declined("CARD_DECLINED");
+        }
+        charges.putIfAbsent(request.idempotencyKey(), request);
+        return ChargeResult.approved(transactionIds.computeIfAbsent(request.idempotencyKey(),
+                key -> "FAKE-" + UUID.randomUUID()));
+    }
+
+    @Override
+    public RefundResult refund(String transactionId, BigDecimal amount, String currency, String idempotencyKey) {
+        if (transactionId == null || !transactionIds.containsValue(transactionId)) {
+            return RefundResult.rejected("UNKNOWN_PAYMENT");
+        }
+        refunds.putIfAbsent(idempotencyKey, amount);
+        return RefundResult.accepted(refundIds.computeIfAbsent(idempotencyKey,
+                key -> "FAKE-REFUND-" + UUID.randomUUID()));
+    }
+
+    public void declineCharges(UUID planId) {
+        declinedPlans.add(planId);
+    }
+
+    public Map<String, ChargeRequest> charges() {
+        return Map.copyOf(charges);
+    }
+
+    public Map<String, BigDecimal> refunds() {
+        return Map.copyOf(refunds);
+    }
+
+    public void reset() {
+        charges.clear();
+        refunds.clear();
+        refundIds.clear();
+        transactionIds.clear();
+        declinedPlans.clear();
+    }
+}
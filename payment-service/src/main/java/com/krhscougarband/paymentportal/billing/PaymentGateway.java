@@ -0,0 +1,25 @@
+package com.krhscougarband.paymentportal.billing;
+
+import java.math.BigDecimal;
+
+/**
+ * Charges a stored payment method and refunds earlier charges. Implementations
+ * must honour the idempotency key so a retried call never moves money twice.
+ */
+public interface PaymentGateway {
+
+    /**
+     * Returns a successful result, or a declined one only when the card itself
+     * was refused. Throws {@link GatewayRateLimitedException} when the provider
+     * asks us to back off, {@link GatewayRequestException} when it rejects the
+     * request for reasons unrelated to the card, and any other RuntimeException
+     * for transient failures worth retrying.
+     */
+    ChargeResult charge(ChargeRequest request);
+
+    /**
+     * Refund part or all of a previous charge. Amount is in cents. Same
+     * exception contract as {@link #charge}.
+     */
+    RefundResult refund(String transactionId, BigDecimal amount, String currency, String idempotencyKey);
+}
@@ -0,0 +1,39 @@
+package com.krhscougarband.paymentportal.billing;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Evenly spaced permits, e.g. 20/s hands out one permit every 50ms.
+ * Each caller reserves the next free slot with a CAS and parks until it
+ * arrives, so there is no lock for virtual threads to pin on.
+ */
+class RateLimiter {
+
+    private final long intervalNanos;
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+
+    RateLimiter(double permitsPerSecond) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    void acquire() {
+        long now = System.nanoTime();
+        long slot = Math.max(nextFreeNanos.getAndUpdate(next -> Math.max(next, now) + intervalNanos), now);
+        long wait = slot - now;
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            wait = slot - System.nanoTime();
+        }
+    }
+
+    /**
+     * Push every future permit back, used when the provider returns 429.
+     */
+    void pause(Duration duration) {
+        long resumeAt = System.nanoTime() + duration.toNanos();
+        nextFreeNanos.getAndUpdate(next -> Math.max(next, resumeAt));
+    }
+}
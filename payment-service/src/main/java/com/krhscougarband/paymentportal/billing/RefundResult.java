@@ -0,0 +1,12 @@
+package com.krhscougarband.paymentportal.billing;
+
+public record RefundResult(boolean success, String refundId, String failureReason) {
+
+    public static RefundResult accepted(String refundId) {
+        return new RefundResult(true, refundId, null);
+    }
+
+    public static RefundResult rejected(String reason) {
+        return new RefundResult(false, null, reason);
+    }
+}
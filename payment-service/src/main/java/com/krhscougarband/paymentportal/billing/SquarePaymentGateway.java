@@ -0,0 +1,126 @@
+package com.krhscougarband.paymentportal.billing;
+
+import com.squareup.square.SquareClient;
+import com.squareup.square.core.Environment;
+import com.squareup.square.core.SquareApiException;
+import com.squareup.square.types.CreatePaymentRequest;
+import com.squareup.square.types.CreatePaymentResponse;
+import com.squareup.square.types.Currency;
+import com.squareup.square.types.Error;
+import com.squareup.square.types.ErrorCategory;
+import com.squareup.square.types.Money;
+import com.squareup.square.types.Payment;
+import com.squareup.square.types.PaymentRefund;
+import com.squareup.square.types.RefundPaymentRequest;
+import com.squareup.square.types.RefundPaymentResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Charges a customer's card on file through the Square Payments API and
+ * refunds those charges through the Refunds API.
+ */
+@Component
+@ConditionalOnProperty(name = "billing.gateway", havingValue = "square", matchIfMissing = true)
+public class SquarePaymentGateway implements PaymentGateway {
+
+    private final SquareClient client;
+    private final String locationId;
+    private final Duration defaultRetryAfter;
+
+    public SquarePaymentGateway(@Value("${square.api.token:}") String token,
+                                @Value("${square.environment:SANDBOX}") String environment,
+                                @Value("${square.location.id:}") String locationId,
+                                @Value("${billing.gateway.retry-after-ms:2000}") long retryAfterMs) {
+        this.client = SquareClient.builder()
+                .token(token)
+                .environment("PRODUCTION".equalsIgnoreCase(environment) ? Environment.PRODUCTION : Environment.SANDBOX)
+                .build();
+        this.locationId = locationId;
+        this.defaultRetryAfter = Duration.ofMillis(retryAfterMs);
+    }
+
+    @Override
+    public ChargeResult charge(ChargeRequest request) {
+        if (request.sourceId() == null || request.sourceId().isBlank()) {
+            return ChargeResult.declined("NO_CARD_ON_FILE");
+        }
+        try {
+            CreatePaymentResponse response = client.payments().create(CreatePaymentRequest.builder()
+                    .sourceId(request.sourceId())
+                    .idempotencyKey(request.idempotencyKey())
+                    .amountMoney(Money.builder()
+                            .amount(request.amount().longValueExact())
+                            .currency(Currency.valueOf(request.currency() != null ? request.currency() : "USD"))
+                            .build())
+                    .customerId(request.customerId())
+                    .locationId(locationId)
+                    .referenceId(request.planId().toString())
+                    .autocomplete(true)
+                    .build());
+            Payment payment = response.getPayment()
+                    .orElseThrow(() -> new IllegalStateException("Square returned no payment"));
+            String status = payment.getStatus().orElse("");
+            if ("COMPLETED".equals(status) || "APPROVED".equals(status)) {
+                return ChargeResult.approved(payment.getId().orElseThrow());
+            }
+            return ChargeResult.declined("Payment status " + status);
+        } catch (SquareApiException e) {
+            if (e.statusCode() == 429) {
+                throw new GatewayRateLimitedException(defaultRetryAfter);
+            }
+            if (e.statusCode() >= 500) {
+                throw e; // transient; retried when the lease expires
+            }
+            // Only card problems are declines; auth and request errors say nothing about the plan
+            if (isCardDecline(e)) {
+                return ChargeResult.declined("Square " + e.statusCode() + ": " + e.getMessage());
+            }
+            throw new GatewayRequestException(e.statusCode(), e.getMessage());
+        }
+    }
+
+    private static boolean isCardDecline(SquareApiException e) {
+        List<Error> errors = e.errors();
+        return errors != null && errors.stream()
+                .anyMatch(error -> ErrorCategory.PAYMENT_METHOD_ERROR.equals(error.getCategory()));
+    }
+
+    @Override
+    public RefundResult refund(String transactionId, BigDecimal amount, String currency, String idempotencyKey) {
+        if (transactionId == null || transactionId.isBlank()) {
+            return RefundResult.rejected("NO_SQUARE_PAYMENT");
+        }
+        try {
+            RefundPaymentResponse response = client.refunds().refundPayment(RefundPaymentRequest.builder()
+                    .idempotencyKey(idempotencyKey)
+                    .amountMoney(Money.builder()
+                            .amount(amount.longValueExact())
+                            .currency(Currency.valueOf(currency != null ? currency : "USD"))
+                            .build())
+                    .paymentId(transactionId)
+                    .build());
+            PaymentRefund refund = response.getRefund()
+                    .orElseThrow(() -> new IllegalStateException("Square returned no refund"));
+            String status = refund.getStatus().orElse("");
+            // PENDING is normal: Square settles refunds asynchronously
+            if ("REJECTED".equals(status) || "FAILED".equals(status)) {
+                return RefundResult.rejected("Refund status " + status);
+            }
+            return RefundResult.accepted(refund.getId());
+        } catch (SquareApiException e) {
+            if (e.statusCode() == 429) {
+                throw new GatewayRateLimitedException(defaultRetryAfter);
+            }
+            if (e.statusCode() >= 500) {
+                throw e;
+            }
+            return RefundResult.rejected("Square " + e.statusCode() + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,18 +1,31 @@
 package com.krhscougarband.paymentportal.controllers;
 
+import com.krhscougarband.paymentportal.dto.BulkPlanRequest;
+import com.krhscougarband.paymentportal.dto.OrderFilter;
 import com.krhscougarband.paymentportal.dto.PlanDto;
+import com.krhscougarband.paymentportal.dto.PlanFilter;
+import com.krhscougarband.paymentportal.dto.PlanPageDto;
+import com.krhscougarband.paymentportal.dto.PlanSort;
 import com.krhscougarband.paymentportal.dto.RefundRequest;
-import com.krhscougarband.paymentportal.dto.RefundRecordDto;
+import com.krhscougarband.paymentportal.entities.Order;
 import com.krhscougarband.paymentportal.entities.User;
+import com.krhscougarband.paymentportal.exceptions.ConflictException;
+import com.krhscougarband.paymentportal.refunds.RefundQueueBroadcaster;
 import com.krhscougarband.paymentportal.repositories.UserRepository;
+import com.krhscougarband.paymentportal.services.OrderService;
 import com.krhscougarband.paymentportal.services.PlanService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,11 +36,17 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/admin")
 @PreAuthorize("hasAnyRole('ADMIN','REFUND_APPROVER')")
 public class AdminController {
+    private static final int MAX_BULK_PLANS = 5000;
+
     private final PlanService planService;
     @Autowired
     private UserRepository userRepository;
     @Autowired
     private PasswordEncoder passwordEncoder;
+    @Autowired
+    private RefundQueueBroadcaster refundQueueBroadcaster;
+    @Autowired
+    private OrderService orderService;
 
     public AdminController(PlanService planService) {
         this.planService = planService;
@@ -35,8 +54,67 @@ public class AdminController {
 
     @GetMapping("/plans")
     @PreAuthorize("hasRole('ADMIN')")
-    public List<PlanDto> getAllPlans() {
-        return planService.getAllPlans();
+    public ResponseEntity<?> getAllPlans(@RequestParam(required = false) String status,
+                                         @RequestParam(required = false) String frequency,
+                                         @RequestParam(required = false) String studentId,
+                                         @RequestParam(required = false) String ownerEmail,
+                                         @RequestParam(required = false) Boolean paused,
+                                         @RequestParam(defaultValue = "NEXT_CHARGE") String sort,
+                                         @RequestParam(defaultValue = "asc") String direction,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "50") int limit) {
+        PlanSort planSort;
+        try {
+            planSort = PlanSort.valueOf(sort.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unsupported sort: " + sort));
+        }
+        PlanFilter filter = new PlanFilter();
+        filter.setStatus(blankToNull(status));
+        filter.setFrequency(blankToNull(frequency));
+        filter.setStudentId(blankToNull(studentId));
+        filter.setOwnerEmail(blankToNull(ownerEmail));
+        filter.setPaused(paused);
+
+        int pageSize = Math.max(1, Math.min(limit, 200));
+        PlanPageDto page = planService.getPlansPage(filter, planSort, "desc".equalsIgnoreCase(direction), cursor, pageSize);
+        return ResponseEntity.ok(page);
+    }
+
+    /**
+     * Page through orders, newest first (admin only). Dates are inclusive days.
+     */
+    @GetMapping("/orders")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getOrders(@RequestParam(required = false) String status,
+                                       @RequestParam(required = false) String paymentStatus,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                       @RequestParam(required = false) String email,
+                                       @RequestParam(defaultValue = "0") int page,
+                                       @RequestParam(defaultValue = "50") int size) {
+        OrderFilter filter = new OrderFilter();
+        try {
+            if (blankToNull(status) != null) {
+                filter.setStatus(Order.OrderStatus.valueOf(status.trim().toUpperCase()));
+            }
+            if (blankToNull(paymentStatus) != null) {
+                filter.setPaymentStatus(Order.PaymentStatus.valueOf(paymentStatus.trim().toUpperCase()));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unsupported status filter"));
+        }
+        filter.setCreatedFrom(from != null ? from.atStartOfDay() : null);
+        filter.setCreatedTo(to != null ? to.plusDays(1).atStartOfDay() : null);
+        filter.setUserEmail(blankToNull(email));
+
+        int pageSize = Math.max(1, Math.min(size, 200));
+        int pageNumber = Math.max(0, Math.min(page, Integer.MAX_VALUE / pageSize));
+        return ResponseEntity.ok(orderService.getOrdersPage(filter, pageNumber, pageSize));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
     }
 
     @PostMapping("/plans/{id}/refund")
@@ -45,7 +123,8 @@ public class AdminController {
         try {
             long amountCents = ((Number) body.get("amount")).longValue();
             String method = (String) body.get("method");
-            planService.refundPlan(id, amountCents, method);
+            String initiator = SecurityContextHolder.getContext().getAuthentication().getName();
+            planService.refundPlan(id, amountCents, method, initiator);
             return ResponseEntity.ok(Map.of("message", "Refund submitted for approval"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -56,26 +135,64 @@ public class AdminController {
     @PreAuthorize("hasRole('REFUND_APPROVER')")
     public ResponseEntity<?> approveRefund(@PathVariable UUID refundId) {
         try {
-            planService.approveRefund(refundId);
+            String approver = SecurityContextHolder.getContext().getAuthentication().getName();
+            planService.approveRefund(refundId, approver);
             return ResponseEntity.ok(Map.of("message", "Refund approved successfully"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    @PostMapping("/refunds/{refundId}/deny")
+    @PreAuthorize("hasRole('REFUND_APPROVER')")
+    public ResponseEntity<?> denyRefund(@PathVariable UUID refundId) {
+        try {
+            String approver = SecurityContextHolder.getContext().getAuthentication().getName();
+            planService.denyRefund(refundId, approver);
+            return ResponseEntity.ok(Map.of("message", "Refund denied"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/refunds/pending")
     @PreAuthorize("hasRole('REFUND_APPROVER')")
-    public List<Map<String, Object>> getPendingRefunds() {
-        return planService.getPendingRefunds().stream().map(refund -> {
-            Map<String, Object> map = new HashMap<>();
-            map.put("id", refund.getId());
-            map.put("planId", refund.getPlanId());
-            map.put("refundAmount", refund.getRefundAmount());
-            map.put("refundMethod", refund.getRefundMethod());
-            map.put("requestedAt", refund.getRequestedAt());
-            map.put("initiatedByUserEmail", refund.getInitiatedByUserEmail());
-            return map;
-        }).collect(Collectors.toList());
+    public ResponseEntity<?> getPendingRefunds(@RequestParam(defaultValue = "0") int page,
+                                               @RequestParam(defaultValue = "25") int size) {
+        int pageSize = Math.max(1, Math.min(size, 100));
+        return ResponseEntity.ok(planService.getPendingRefunds(Math.max(page, 0), pageSize));
+    }
+
+    /**
+     * Live updates for the pending refund queue (Server-Sent Events)
+     */
+    @GetMapping(value = "/refunds/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('REFUND_APPROVER')")
+    public SseEmitter streamRefunds(HttpServletResponse response) {
+        // Stop nginx from buffering the stream
+        response.setHeader("X-Accel-Buffering", "no");
+        return refundQueueBroadcaster.subscribe();
+    }
+
+    /**
+     * Pause, resume, cancel or reactivate many plans at once (admin only)
+     */
+    @PostMapping("/plans/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> bulkUpdatePlans(@RequestBody BulkPlanRequest request) {
+        if (request.getAction() == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "action is required"));
+        }
+        boolean hasIds = request.getPlanIds() != null && !request.getPlanIds().isEmpty();
+        if (!hasIds && (request.getFilter() == null || request.getFilter().isEmpty())) {
+            return ResponseEntity.badRequest().body(Map.of("error", "planIds or a non-empty filter is required"));
+        }
+        try {
+            return ResponseEntity.ok(planService.bulkUpdate(
+                    request.getAction(), request.getPlanIds(), request.getFilter(), MAX_BULK_PLANS));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     /**
@@ -87,6 +204,8 @@ public class AdminController {
         try {
             planService.pausePlan(planId);
             return ResponseEntity.ok(Map.of("message", "Plan paused successfully"));
+        } catch (ConflictException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -101,13 +220,15 @@ public class AdminController {
         try {
             planService.resumePlan(planId);
             return ResponseEntity.ok(Map.of("message", "Plan resumed successfully"));
+        } catch (ConflictException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
     /**
-     * Re-enable a cancelled plan (admin only)
+     * Re-enable a cancelled or errored plan (admin only)
      * POST /api/admin/plans/{planId}/reactivate
      */
     @PostMapping("/plans/{planId}/reactivate")
@@ -116,6 +237,8 @@ public class AdminController {
         try {
             PlanDto plan = planService.reactivatePlan(planId);
             return ResponseEntity.ok(plan);
+        } catch (ConflictException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -2,17 +2,24 @@ package com.krhscougarband.paymentportal.controllers;
 
 import com.krhscougarband.paymentportal.entities.RevokedToken;
 import com.krhscougarband.paymentportal.entities.User;
+import com.krhscougarband.paymentportal.exceptions.ServiceUnavailableException;
 import com.krhscougarband.paymentportal.repositories.RevokedTokenRepository;
 import com.krhscougarband.paymentportal.repositories.UserRepository;
 import com.krhscougarband.paymentportal.security.JwtUtil;
+import com.krhscougarband.paymentportal.security.PasswordHashingService;
+import com.krhscougarband.paymentportal.security.TokenGenerationCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -28,61 +35,98 @@ public class AuthController {
     private JwtUtil jwtUtil;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private TokenGenerationCache tokenGenerationCache;
+
+    // Work after the hash (DB writes, token signing) runs here so the bounded hashing pool only hashes
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor requestExecutor;
 
     // Users can register with email/password
+    // BCrypt runs on the hashing pool; the request thread is released while it works
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody Map<String, String> body) {
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody Map<String, String> body) {
         String email = body.get("email");
         String password = body.get("password");
 
         if (email == null || email.isEmpty() || password == null || password.isEmpty()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Email and password required"));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body(Map.of("error", "Email and password required")));
         }
 
         Optional<User> existing = userRepository.findByEmail(email);
         if (existing.isPresent()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Email already registered"));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body(Map.of("error", "Email already registered")));
         }
 
-        User user = new User();
-        user.setEmail(email);
-        user.setPassword(passwordEncoder.encode(password));
-        userRepository.save(user);
-
-        return ResponseEntity.ok(Map.of("success", true, "message", "User registered successfully"));
+        try {
+            return passwordHashingService.encode(password).<ResponseEntity<?>>thenApplyAsync(hash -> {
+                User user = new User();
+                user.setEmail(email);
+                user.setPassword(hash);
+                userRepository.save(user);
+                return ResponseEntity.ok(Map.of("success", true, "message", "User registered successfully"));
+            }, requestExecutor).exceptionally(e -> {
+                // Lost a race with a concurrent registration of the same email
+                if (e.getCause() instanceof DataIntegrityViolationException) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Email already registered"));
+                }
+                throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+            });
+        } catch (ServiceUnavailableException e) {
+            return CompletableFuture.completedFuture(serviceBusy(e));
+        }
     }
 
     // Login with email/password returns JWT token
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, Object> body) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody Map<String, Object> body) {
         String email = (String) body.get("email");
         String password = (String) body.get("password");
         Boolean rememberMe = body.get("rememberMe") != null ? (Boolean) body.get("rememberMe") : false;
 
         if (email == null || email.isEmpty() || password == null || password.isEmpty()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Email and password required"));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body(Map.of("error", "Email and password required")));
         }
 
         Optional<User> userOpt = userRepository.findByEmail(email);
         if (userOpt.isEmpty()) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid email or password"));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.status(401).body(Map.of("error", "Invalid email or password")));
         }
 
         User user = userOpt.get();
-        if (!passwordEncoder.matches(password, user.getPassword())) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid email or password"));
+        try {
+            return passwordHashingService.matches(password, user.getPassword()).thenApplyAsync(matches -> {
+                if (!matches) {
+                    return ResponseEntity.status(401).body(Map.of("error", "Invalid email or password"));
+                }
+
+                int generation = user.getTokenGeneration();
+                String token = jwtUtil.generateToken(email, rememberMe, generation, user.getRole());
+                String refreshToken = jwtUtil.generateRefreshToken(email, generation);
+
+                return ResponseEntity.ok(Map.of(
+                    "token", token,
+                    "refreshToken", refreshToken,
+                    "email", email,
+                    "expiresIn", rememberMe ? 604800000L : 3600000L // milliseconds
+                ));
+            }, requestExecutor);
+        } catch (ServiceUnavailableException e) {
+            return CompletableFuture.completedFuture(serviceBusy(e));
         }
+    }
 
-        String token = jwtUtil.generateToken(email, rememberMe);
-        String refreshToken = jwtUtil.generateRefreshToken(email);
-        
-        return ResponseEntity.ok(Map.of(
-            "token", token, 
-            "refreshToken", refreshToken,
-            "email", email,
-            "expiresIn", rememberMe ? 604800000L : 3600000L // milliseconds
-        ));
+    private ResponseEntity<?> serviceBusy(ServiceUnavailableException e) {
+        return ResponseEntity.status(503)
+            .header("Retry-After", "2")
+            .body(Map.of("error", e.getMessage()));
     }
 
     // Get current user info
@@ -135,8 +179,14 @@ public class AuthController {
                 return ResponseEntity.status(401).body(Map.of("error", "Invalid or expired refresh token"));
             }
 
+            int generation = tokenGenerationCache.currentGeneration(email);
+            if (jwtUtil.extractTokenGeneration(refreshToken) < generation) {
+                return ResponseEntity.status(401).body(Map.of("error", "Token has been revoked"));
+            }
+
             // Generate new access token (1 hour)
-            String newToken = jwtUtil.generateToken(email, false);
+            String role = userRepository.findByEmail(email).map(User::getRole).orElse(null);
+            String newToken = jwtUtil.generateToken(email, false, generation, role);
             
             return ResponseEntity.ok(Map.of(
                 "token", newToken,
@@ -181,11 +231,12 @@ public class AuthController {
         }
 
         String email = authentication.getName();
-        
-        // This is a simplified approach - in production, you'd want to track all active tokens
-        // For now, we'll just indicate success and rely on token expiration
-        // A more robust solution would require storing all issued tokens
-        
+
+        // One counter bump invalidates every access and refresh token issued so far.
+        // Individually revoked tokens stay listed until they expire: other instances may
+        // still hold the old generation in their cache for up to its TTL.
+        tokenGenerationCache.bump(email);
+
         return ResponseEntity.ok(Map.of(
             "message", "Logged out from all devices successfully",
             "note", "Please re-login on all devices"
@@ -0,0 +1,58 @@
+package com.krhscougarband.paymentportal.controllers;
+
+import com.krhscougarband.paymentportal.orders.StockReservationService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Stock holds for the signed-in user's cart
+ */
+@RestController
+@RequestMapping("/api/cart/reservations")
+public class CartController {
+    private final StockReservationService stockReservationService;
+
+    public CartController(StockReservationService stockReservationService) {
+        this.stockReservationService = stockReservationService;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> myHolds(Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+        return ResponseEntity.ok(stockReservationService.getHolds(authentication.getName()));
+    }
+
+    @PutMapping("/{itemId}")
+    public ResponseEntity<?> hold(@PathVariable Long itemId, @RequestBody Map<String, Object> body,
+                                  Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+        // JSON whole numbers that fit an int arrive as Integer; fractions and oversized values are rejected, not truncated
+        if (!(body.get("quantity") instanceof Integer quantity)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "quantity must be a whole number"));
+        }
+        try {
+            return ResponseEntity.ok(stockReservationService.hold(authentication.getName(), itemId, quantity));
+        } catch (RuntimeException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(ex.getMessage())));
+        }
+    }
+
+    @DeleteMapping("/{itemId}")
+    public ResponseEntity<?> release(@PathVariable Long itemId, Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+        try {
+            return ResponseEntity.ok(stockReservationService.hold(authentication.getName(), itemId, 0));
+        } catch (RuntimeException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(ex.getMessage())));
+        }
+    }
+}
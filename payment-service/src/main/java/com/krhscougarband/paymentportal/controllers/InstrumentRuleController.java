@@ -2,6 +2,7 @@ package com.krhscougarband.paymentportal.controllers;
 
 import com.krhscougarband.paymentportal.entities.InstrumentItemRule;
 import com.krhscougarband.paymentportal.repositories.InstrumentItemRuleRepository;
+import com.krhscougarband.paymentportal.services.InstrumentRuleCache;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -11,9 +12,12 @@ import java.util.List;
 @RequestMapping("/api/instrument-rules")
 public class InstrumentRuleController {
     private final InstrumentItemRuleRepository instrumentItemRuleRepository;
+    private final InstrumentRuleCache instrumentRuleCache;
 
-    public InstrumentRuleController(InstrumentItemRuleRepository instrumentItemRuleRepository) {
+    public InstrumentRuleController(InstrumentItemRuleRepository instrumentItemRuleRepository,
+                                    InstrumentRuleCache instrumentRuleCache) {
         this.instrumentItemRuleRepository = instrumentItemRuleRepository;
+        this.instrumentRuleCache = instrumentRuleCache;
     }
 
     @GetMapping("/{instrument}")
@@ -23,6 +27,8 @@ public class InstrumentRuleController {
 
     @PostMapping
     public ResponseEntity<InstrumentItemRule> createRule(@RequestBody InstrumentItemRule rule) {
-        return ResponseEntity.ok(instrumentItemRuleRepository.save(rule));
+        InstrumentItemRule saved = instrumentItemRuleRepository.save(rule);
+        instrumentRuleCache.refresh();
+        return ResponseEntity.ok(saved);
     }
 }
@@ -1,7 +1,12 @@
 package com.krhscougarband.paymentportal.controllers;
 
+import com.krhscougarband.paymentportal.dto.ItemStockDto;
 import com.krhscougarband.paymentportal.entities.Item;
 import com.krhscougarband.paymentportal.services.ItemService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -18,8 +23,17 @@ public class ItemController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Item>> listAvailableItems() {
-        return ResponseEntity.ok(itemService.getAvailableItems());
+    public ResponseEntity<byte[]> listAvailableItems(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return catalogResponse(itemService.getAvailableCatalog(), ifNoneMatch);
+    }
+
+    // Live stock for available items; never cached, unlike the listings above
+    @GetMapping("/stock")
+    public ResponseEntity<List<ItemStockDto>> listStock() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(itemService.getAvailableStock());
     }
 
     @GetMapping("/{id}")
@@ -30,8 +44,10 @@ public class ItemController {
     }
 
     @GetMapping("/category/{category}")
-    public ResponseEntity<List<Item>> listByCategory(@PathVariable String category) {
-        return ResponseEntity.ok(itemService.getItemsByCategory(category));
+    public ResponseEntity<byte[]> listByCategory(
+            @PathVariable String category,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return catalogResponse(itemService.getCategoryCatalog(category), ifNoneMatch);
     }
 
     @PostMapping
@@ -50,4 +66,33 @@ public class ItemController {
         itemService.deleteItem(id);
         return ResponseEntity.noContent().build();
     }
+
+    // no-cache lets the browser keep the listing but revalidate it every time, so admin edits show up at once
+    private static ResponseEntity<byte[]> catalogResponse(ItemService.CatalogView view, String ifNoneMatch) {
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        if (matches(ifNoneMatch, view.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(view.etag()).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(view.etag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(view.json());
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,31 @@
+package com.krhscougarband.paymentportal.controllers;
+
+import com.krhscougarband.paymentportal.security.JwtKeyManager;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the public half of the JWT signing keys so other services
+ * (kr-admin, admin-portal) can verify payment-service tokens locally.
+ */
+@RestController
+public class JwksController {
+
+    private final JwtKeyManager keyManager;
+
+    public JwksController(JwtKeyManager keyManager) {
+        this.keyManager = keyManager;
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+                .body(keyManager.jwks());
+    }
+}
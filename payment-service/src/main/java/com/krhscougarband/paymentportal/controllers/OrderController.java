@@ -2,6 +2,8 @@ package com.krhscougarband.paymentportal.controllers;
 
 import com.krhscougarband.paymentportal.dtos.CreateOrderRequest;
 import com.krhscougarband.paymentportal.entities.Order;
+import com.krhscougarband.paymentportal.exceptions.ResourceNotFoundException;
+import com.krhscougarband.paymentportal.security.AuthRoleMapper;
 import com.krhscougarband.paymentportal.services.OrderService;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
@@ -51,27 +53,36 @@ public class OrderController {
         }
     }
 
-    @GetMapping
-    public ResponseEntity<List<Order>> allOrders() {
-        try {
-            return ResponseEntity.ok(orderService.getAllOrders());
-        } catch (Exception e) {
-            return ResponseEntity.status(500).build();
+    @GetMapping("/{orderNumber}")
+    public ResponseEntity<?> getOrder(@PathVariable String orderNumber, Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
-    }
 
-    @GetMapping("/{orderNumber}")
-    public ResponseEntity<Order> getOrder(@PathVariable String orderNumber) {
-        return ResponseEntity.ok(orderService.getOrderByNumber(orderNumber));
+        try {
+            return ResponseEntity.ok(orderService.getOrderByNumber(orderNumber, authentication.getName(), isAdmin(authentication)));
+        } catch (ResourceNotFoundException ex) {
+            return ResponseEntity.status(404).body(Map.of("error", ex.getMessage()));
+        }
     }
 
     @PutMapping("/{orderNumber}/cancel")
-    public ResponseEntity<?> cancelOrder(@PathVariable String orderNumber) {
+    public ResponseEntity<?> cancelOrder(@PathVariable String orderNumber, Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
         try {
-            orderService.cancelOrder(orderNumber);
+            orderService.cancelOrder(orderNumber, authentication.getName(), isAdmin(authentication));
             return ResponseEntity.ok(Map.of("message", "Order cancelled successfully"));
+        } catch (ResourceNotFoundException ex) {
+            return ResponseEntity.status(404).body(Map.of("error", ex.getMessage()));
         } catch (RuntimeException ex) {
             return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    private static boolean isAdmin(Authentication authentication) {
+        return "ADMIN".equals(AuthRoleMapper.determineRole(authentication));
+    }
+}
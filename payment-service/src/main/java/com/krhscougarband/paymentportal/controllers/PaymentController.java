@@ -1,12 +1,20 @@
 package com.krhscougarband.paymentportal.controllers;
 
+import com.krhscougarband.paymentportal.dto.PaymentHistoryDto;
+import com.krhscougarband.paymentportal.dto.PaymentLogDto;
+import com.krhscougarband.paymentportal.dto.PaymentTotals;
 import com.krhscougarband.paymentportal.entities.PaymentLog;
 import com.krhscougarband.paymentportal.entities.Plan;
 import com.krhscougarband.paymentportal.entities.User;
+import com.krhscougarband.paymentportal.exceptions.ConflictException;
 import com.krhscougarband.paymentportal.repositories.PaymentLogRepository;
 import com.krhscougarband.paymentportal.repositories.PlanRepository;
 import com.krhscougarband.paymentportal.repositories.UserRepository;
+import com.krhscougarband.paymentportal.services.PaymentService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -14,7 +22,6 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -31,19 +38,39 @@ public class PaymentController {
     @Autowired
     private UserRepository userRepository;
 
-    // Get payment history for a specific plan
+    @Autowired
+    private PaymentService paymentService;
+
+    // Get payment history for a specific plan, newest first, with plan-wide totals
     @GetMapping("/plan/{planId}")
-    public ResponseEntity<?> getPlanPayments(Authentication auth, @PathVariable UUID planId) {
+    public ResponseEntity<?> getPlanPayments(Authentication auth,
+                                             @PathVariable UUID planId,
+                                             @RequestParam(defaultValue = "0") int page,
+                                             @RequestParam(defaultValue = "20") int size) {
         Plan plan = planRepository.findById(planId)
                 .orElseThrow(() -> new RuntimeException("Plan not found"));
 
-        // Verify user owns this plan
-        if (!plan.getOwner().getEmail().equals(auth.getName())) {
+        // Verify user owns this plan (admins may view any plan)
+        User user = userRepository.findByEmail(auth.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        boolean isAdmin = "ADMIN".equals(user.getRole());
+        if (!isAdmin && !plan.getOwner().getId().equals(user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Not authorized to view this plan"));
         }
 
-        List<PaymentLog> payments = paymentLogRepository.findByPlan(plan);
-        return ResponseEntity.ok(payments);
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.max(1, Math.min(size, 100)));
+        Page<PaymentLogDto> payments = paymentLogRepository.findHistoryByPlanId(planId, pageRequest);
+        PaymentTotals totals = paymentLogRepository.summarizeByPlanId(planId);
+        return ResponseEntity.ok(new PaymentHistoryDto(
+                payments.getContent(),
+                payments.getNumber(),
+                payments.getSize(),
+                payments.getTotalElements(),
+                payments.getTotalPages(),
+                totals.getTotalPaid(),
+                totals.getTotalRefunded(),
+                totals.getTotalFailed(),
+                totals.getFailedCount()));
     }
 
     // Add payment (card or cash) to a plan
@@ -70,26 +97,21 @@ public class PaymentController {
             String paymentMethod = (String) body.getOrDefault("paymentMethod", "CARD");
             String transactionId = (String) body.getOrDefault("transactionId", null);
 
-            PaymentLog payment = new PaymentLog();
-            payment.setPlan(plan);
-            payment.setAmount(amount);
-            payment.setPaymentMethod(paymentMethod);
-            payment.setStatus("PAID");
-            payment.setTransactionId(transactionId);
-            payment.setTimestamp(LocalDateTime.now());
-
-            paymentLogRepository.save(payment);
-
-            // Update plan's amountPaid
-            BigDecimal currentPaid = plan.getAmountPaid() != null ? plan.getAmountPaid() : BigDecimal.ZERO;
-            plan.setAmountPaid(currentPaid.add(amount));
-            plan.setUpdatedAt(LocalDateTime.now());
-            planRepository.save(plan);
+            PaymentService.PaymentResult result = paymentService.applyPayment(planId, amount, paymentMethod, transactionId);
+            PaymentLog payment = result.payment();
+            if (result.duplicate()) {
+                return ResponseEntity.ok(Map.of(
+                        "message", "Payment already recorded",
+                        "payment", payment
+                ));
+            }
 
             return ResponseEntity.ok(Map.of(
                     "message", "Payment added successfully",
                     "payment", payment
             ));
+        } catch (ConflictException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -114,11 +136,16 @@ public class PaymentController {
             plan.setCardLast4(body.get("cardLast4"));
             plan.setCardBrand(body.get("cardBrand"));
             plan.setCardHolderName(body.get("cardHolderName"));
+            if (body.containsKey("squareCardId")) {
+                plan.setSquareCardId(body.get("squareCardId"));
+            }
             plan.setUpdatedAt(LocalDateTime.now());
 
             planRepository.save(plan);
 
             return ResponseEntity.ok(Map.of("message", "Card information updated"));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(409).body(Map.of("error", "Plan was changed by another request; reload it and try again"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -159,27 +186,17 @@ public class PaymentController {
         try {
             BigDecimal amount = new BigDecimal(body.get("amount").toString());
             String notes = (String) body.getOrDefault("notes", "");
+            // Clients may send their own transactionId so a retried submission is not counted twice
+            String transactionId = (String) body.getOrDefault("transactionId", "CASH-" + UUID.randomUUID());
 
-            PaymentLog payment = new PaymentLog();
-            payment.setPlan(plan);
-            payment.setAmount(amount);
-            payment.setPaymentMethod("CASH");
-            payment.setStatus("PAID");
-            payment.setTransactionId("CASH-" + UUID.randomUUID());
-            payment.setTimestamp(LocalDateTime.now());
-
-            paymentLogRepository.save(payment);
-
-            // Update plan's amountPaid
-            BigDecimal currentPaid = plan.getAmountPaid() != null ? plan.getAmountPaid() : BigDecimal.ZERO;
-            plan.setAmountPaid(currentPaid.add(amount));
-            plan.setUpdatedAt(LocalDateTime.now());
-            planRepository.save(plan);
+            PaymentLog payment = paymentService.applyPayment(planId, amount, "CASH", transactionId).payment();
 
             return ResponseEntity.ok(Map.of(
                     "message", "Cash payment added successfully",
                     "payment", payment
             ));
+        } catch (ConflictException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -0,0 +1,46 @@
+package com.krhscougarband.paymentportal.controllers;
+
+import com.krhscougarband.paymentportal.refunds.RefundWorkflowService;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Landing page for the approve/deny links in refund approval emails.
+ * GET only shows what the link will do; the decision is made by the POST from
+ * the confirmation button, so link previews and mail scanners are harmless.
+ * No login is needed: the signed one-time token is the credential.
+ */
+@Controller
+public class RefundDecisionController {
+
+    private final RefundWorkflowService refundWorkflowService;
+
+    public RefundDecisionController(RefundWorkflowService refundWorkflowService) {
+        this.refundWorkflowService = refundWorkflowService;
+    }
+
+    @GetMapping("/refunds/decision")
+    public String confirm(@RequestParam String token, Model model) {
+        try {
+            model.addAttribute("refund", refundWorkflowService.preview(token));
+            model.addAttribute("token", token);
+        } catch (Exception e) {
+            model.addAttribute("error", e.getMessage());
+        }
+        return "refund-decision";
+    }
+
+    @PostMapping("/refunds/decision")
+    public String decide(@RequestParam String token, Model model) {
+        try {
+            model.addAttribute("refund", refundWorkflowService.decide(token));
+            model.addAttribute("done", true);
+        } catch (Exception e) {
+            model.addAttribute("error", e.getMessage());
+        }
+        return "refund-decision";
+    }
+}
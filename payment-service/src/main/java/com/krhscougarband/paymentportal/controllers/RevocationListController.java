@@ -0,0 +1,48 @@
+package com.krhscougarband.paymentportal.controllers;
+
+import com.krhscougarband.paymentportal.repositories.RevokedTokenRepository;
+import com.krhscougarband.paymentportal.repositories.UserRepository;
+import com.krhscougarband.paymentportal.security.JwtUtil;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes what a signature check cannot see: tokens revoked by logout and
+ * each user's token generation after logout-all. kr-admin and admin-portal poll
+ * this list and check tokens against it locally, like the JWKS.
+ * Emails and tokens are only listed as SHA-256 hashes.
+ */
+@RestController
+public class RevocationListController {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final UserRepository userRepository;
+    private final JwtUtil jwtUtil;
+
+    public RevocationListController(RevokedTokenRepository revokedTokenRepository,
+                                    UserRepository userRepository, JwtUtil jwtUtil) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.userRepository = userRepository;
+        this.jwtUtil = jwtUtil;
+    }
+
+    @GetMapping("/api/auth/revocations")
+    public ResponseEntity<Map<String, Object>> revocations() {
+        Map<String, Integer> generations = new HashMap<>();
+        for (Object[] row : userRepository.findRaisedTokenGenerations()) {
+            generations.put(jwtUtil.hashToken((String) row[0]), (Integer) row[1]);
+        }
+        List<String> revoked = revokedTokenRepository.findLiveTokenHashes(LocalDateTime.now());
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(Map.of("generations", generations, "revoked", revoked));
+    }
+}
@@ -0,0 +1,86 @@
+package com.krhscougarband.paymentportal.controllers;
+
+import com.krhscougarband.paymentportal.dto.SalesReportRow;
+import com.krhscougarband.paymentportal.services.SalesReportService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shop sales reports from the daily rollups (admin only)
+ */
+@RestController
+@RequestMapping("/api/admin/reports")
+@PreAuthorize("hasRole('ADMIN')")
+public class SalesReportController {
+    private static final int MAX_RANGE_DAYS = 731;
+
+    private final SalesReportService salesReportService;
+
+    public SalesReportController(SalesReportService salesReportService) {
+        this.salesReportService = salesReportService;
+    }
+
+    /**
+     * Units and revenue per item or category for order days from..to (inclusive, default the last 30 days)
+     */
+    @GetMapping("/sales")
+    public ResponseEntity<?> sales(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                   @RequestParam(defaultValue = "item") String groupBy,
+                                   @RequestParam(defaultValue = "false") boolean byDay) {
+        try {
+            return ResponseEntity.ok(report(from, to, groupBy, byDay));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/sales.csv")
+    public ResponseEntity<?> salesCsv(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                      @RequestParam(defaultValue = "item") String groupBy,
+                                      @RequestParam(defaultValue = "false") boolean byDay) {
+        List<SalesReportRow> rows;
+        try {
+            rows = report(from, to, groupBy, byDay);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        String filename = "sales-" + groupBy.trim().toLowerCase() + "-" + start + "-to-" + end + ".csv";
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(salesReportService.toCsv(rows));
+    }
+
+    private List<SalesReportRow> report(LocalDate from, LocalDate to, String groupBy, boolean byDay) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(start, end) >= MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Date range cannot exceed " + MAX_RANGE_DAYS + " days");
+        }
+        SalesReportService.GroupBy grouping;
+        try {
+            grouping = SalesReportService.GroupBy.valueOf(groupBy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported groupBy: " + groupBy);
+        }
+        return salesReportService.getReport(start, end, grouping, byDay);
+    }
+}
@@ -0,0 +1,15 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Either planIds or filter selects the plans; planIds wins when both are sent.
+ */
+@Data
+public class BulkPlanRequest {
+    private PlanBulkAction action;
+    private List<String> planIds;
+    private PlanFilter filter;
+}
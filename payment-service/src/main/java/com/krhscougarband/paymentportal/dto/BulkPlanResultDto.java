@@ -0,0 +1,27 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkPlanResultDto {
+    private PlanBulkAction action;
+    private int updated;
+    private int skipped;
+    private int notFound;
+    private List<Item> results;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private String planId;
+        private String result; // UPDATED, SKIPPED, NOT_FOUND
+        private String reason;
+    }
+}
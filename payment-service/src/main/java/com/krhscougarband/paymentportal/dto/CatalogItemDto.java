@@ -0,0 +1,29 @@
+package com.krhscougarband.paymentportal.dto;
+
+import com.krhscougarband.paymentportal.entities.Item;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Shop listing entry. Leaves out stock and timestamps, which change on every
+ * checkout and cart hold; live stock is served from /api/items/stock.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogItemDto {
+    private Long id;
+    private String name;
+    private String description;
+    private BigDecimal price;
+    private String category;
+    private String imageUrl;
+
+    public static CatalogItemDto from(Item item) {
+        return new CatalogItemDto(item.getId(), item.getName(), item.getDescription(),
+                item.getPrice(), item.getCategory(), item.getImageUrl());
+    }
+}
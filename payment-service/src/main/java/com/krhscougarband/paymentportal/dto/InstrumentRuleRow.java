@@ -0,0 +1,10 @@
+package com.krhscougarband.paymentportal.dto;
+
+/**
+ * An instrument rule reduced to what checkout needs: which item and how many.
+ */
+public record InstrumentRuleRow(
+        String instrument,
+        Long itemId,
+        Integer quantity) {
+}
@@ -0,0 +1,16 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Live stock for one available item; stockQuantity is null for untracked items.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemStockDto {
+    private Long itemId;
+    private Integer stockQuantity;
+}
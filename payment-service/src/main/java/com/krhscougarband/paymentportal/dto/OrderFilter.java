@@ -0,0 +1,18 @@
+package com.krhscougarband.paymentportal.dto;
+
+import com.krhscougarband.paymentportal.entities.Order;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional filters for the admin order listing; null fields are ignored.
+ */
+@Data
+public class OrderFilter {
+    private Order.OrderStatus status;
+    private Order.PaymentStatus paymentStatus;
+    private LocalDateTime createdFrom; // inclusive
+    private LocalDateTime createdTo;   // exclusive
+    private String userEmail;          // case-insensitive prefix match
+}
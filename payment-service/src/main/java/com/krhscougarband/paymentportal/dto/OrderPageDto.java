@@ -0,0 +1,19 @@
+package com.krhscougarband.paymentportal.dto;
+
+import com.krhscougarband.paymentportal.entities.Order;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPageDto {
+    private List<Order> items;
+    private int page;
+    private int size;
+    private long totalElements;
+    private int totalPages;
+}
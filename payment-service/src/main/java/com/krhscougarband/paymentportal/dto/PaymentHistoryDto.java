@@ -0,0 +1,24 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentHistoryDto {
+    private List<PaymentLogDto> items;
+    private int page;
+    private int size;
+    private long totalElements;
+    private int totalPages;
+    // Totals cover the whole plan, not just this page
+    private BigDecimal totalPaid;
+    private BigDecimal totalRefunded;
+    private BigDecimal totalFailed;
+    private long failedCount;
+}
@@ -0,0 +1,21 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentLogDto {
+    private UUID id;
+    private BigDecimal amount;
+    private String status;
+    private String paymentMethod;
+    private String transactionId;
+    private LocalDateTime timestamp;
+}
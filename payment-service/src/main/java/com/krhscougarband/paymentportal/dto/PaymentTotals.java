@@ -0,0 +1,13 @@
+package com.krhscougarband.paymentportal.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Native-query projection of a plan's payment aggregates.
+ */
+public interface PaymentTotals {
+    BigDecimal getTotalPaid();
+    BigDecimal getTotalRefunded();
+    BigDecimal getTotalFailed();
+    long getFailedCount();
+}
@@ -0,0 +1,23 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingRefundDto {
+    private UUID id;
+    private UUID planId;
+    private String planName;
+    private String ownerEmail;
+    private BigDecimal refundAmount;
+    private String refundMethod;
+    private LocalDateTime requestedAt;
+    private String initiatedByUserEmail;
+}
@@ -0,0 +1,18 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingRefundPageDto {
+    private List<PendingRefundDto> items;
+    private int page;
+    private int size;
+    private long totalElements;
+    private int totalPages;
+}
@@ -0,0 +1,11 @@
+package com.krhscougarband.paymentportal.dto;
+
+/**
+ * State transitions the bulk plan endpoint can apply.
+ */
+public enum PlanBulkAction {
+    PAUSE,
+    RESUME,
+    CANCEL,
+    REACTIVATE
+}
@@ -0,0 +1,19 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.Data;
+
+/**
+ * Optional filters for the admin plan listing; null fields are ignored.
+ */
+@Data
+public class PlanFilter {
+    private String status;
+    private String frequency;
+    private String studentId;
+    private String ownerEmail; // case-insensitive prefix match
+    private Boolean paused;
+
+    public boolean isEmpty() {
+        return status == null && frequency == null && studentId == null && ownerEmail == null && paused == null;
+    }
+}
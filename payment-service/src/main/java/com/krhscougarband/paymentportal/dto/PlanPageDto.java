@@ -0,0 +1,17 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanPageDto {
+    private List<PlanDto> items;
+    private String nextCursor;     // null when there are no more pages
+    private Long totalCount;       // only sent on the first page
+    private boolean totalEstimated; // true when totalCount comes from planner statistics
+}
@@ -0,0 +1,28 @@
+package com.krhscougarband.paymentportal.dto;
+
+/**
+ * Sort keys supported by the admin plan listing, with the JPQL path each one orders on.
+ */
+public enum PlanSort {
+    NEXT_CHARGE("p.nextChargeAt"),
+    AMOUNT_OWED("p.totalOwed"),
+    STATUS("p.status");
+
+    private final String path;
+
+    PlanSort(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Object valueOf(PlanSummaryRow row) {
+        return switch (this) {
+            case NEXT_CHARGE -> row.nextChargeAt();
+            case AMOUNT_OWED -> row.totalOwed();
+            case STATUS -> row.status();
+        };
+    }
+}
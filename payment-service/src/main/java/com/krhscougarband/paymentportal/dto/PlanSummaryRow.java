@@ -0,0 +1,28 @@
+package com.krhscougarband.paymentportal.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Flat projection of a plan with its owner, student and approved-refund total,
+ * loaded in one statement for the admin plan listing.
+ */
+public record PlanSummaryRow(
+        UUID id,
+        String name,
+        BigDecimal amount,
+        BigDecimal totalOwed,
+        BigDecimal amountPaid,
+        BigDecimal approvedRefunds,
+        String frequency,
+        String currency,
+        String status,
+        boolean paused,
+        LocalDateTime startDate,
+        LocalDateTime nextChargeAt,
+        String studentId,
+        String studentFirstName,
+        String studentLastName,
+        String ownerEmail) {
+}
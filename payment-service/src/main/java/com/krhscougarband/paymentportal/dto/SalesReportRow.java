@@ -0,0 +1,28 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One line of the sales report. Amounts are in cents; day is null unless the
+ * report is broken down by day, and item fields are null when grouped by category.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesReportRow {
+    private LocalDate day;
+    private Long itemId;
+    private String itemName;
+    private String category;
+    private long unitsSold;
+    private BigDecimal revenue;
+    private long unitsCancelled;
+    private BigDecimal revenueCancelled;
+    private long netUnits;
+    private BigDecimal netRevenue;
+}
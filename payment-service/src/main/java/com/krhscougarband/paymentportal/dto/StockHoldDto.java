@@ -0,0 +1,16 @@
+package com.krhscougarband.paymentportal.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockHoldDto {
+    private Long itemId;
+    private int quantity;
+    private LocalDateTime expiresAt; // null when nothing is held (released, or the item has no stock limit)
+}
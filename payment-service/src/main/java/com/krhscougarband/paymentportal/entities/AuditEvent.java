@@ -0,0 +1,34 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Durable audit trail of money movements. Rows are moved here in batches from
+ * audit_outbox by AuditService's background writer.
+ */
+@Entity
+@Table(name = "audit_events", indexes = {
+    @Index(name = "idx_audit_events_plan_created", columnList = "planId, createdAt")
+})
+@Data
+public class AuditEvent {
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private String eventType; // PAYMENT, REFUND_APPROVED, ...
+
+    private UUID planId;
+    private String actor;
+    private BigDecimal amount;
+    private String status;
+    private String transactionId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
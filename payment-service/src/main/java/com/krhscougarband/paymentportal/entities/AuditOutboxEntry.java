@@ -0,0 +1,34 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Audit event staged in the same transaction as the change it describes.
+ * Same columns as audit_events so the relay can move rows with one statement.
+ */
+@Entity
+@Table(name = "audit_outbox", indexes = {
+    @Index(name = "idx_audit_outbox_created", columnList = "createdAt")
+})
+@Data
+public class AuditOutboxEntry {
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private String eventType;
+
+    private UUID planId;
+    private String actor;
+    private BigDecimal amount;
+    private String status;
+    private String transactionId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,37 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response remembered for an Idempotency-Key so a retried mutation is replayed, not re-run.
+ * A row with completed=false marks a request that is still executing.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+    @Index(name = "idx_idempotency_keys_expires_at", columnList = "expiresAt")
+})
+@Data
+public class IdempotencyRecord {
+    @Id
+    @Column(length = 64)
+    private String keyHash; // SHA-256 of principal + Idempotency-Key
+
+    @Column(nullable = false, length = 64)
+    private String requestHash; // SHA-256 of method, path and body; a reused key with a different request is rejected
+
+    private boolean completed;
+    private Integer statusCode;
+    private String contentType;
+
+    @Column(columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
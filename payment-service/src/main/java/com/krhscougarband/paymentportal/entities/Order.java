@@ -1,5 +1,6 @@
 package com.krhscougarband.paymentportal.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
@@ -8,7 +9,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_orders_created_at", columnList = "created_at DESC"),
+    @Index(name = "idx_orders_user_email_created_at", columnList = "user_email, created_at DESC")
+})
 public class Order {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,7 +25,7 @@ public class Order {
     private String userEmail;
 
     @Column(name = "order_number", unique = true, nullable = false)
-    private String orderNumber;
+    private String orderNumber; // assigned by OrderNumberGenerator
 
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -41,6 +45,12 @@ public class Order {
     @Column(name = "notes", length = 2000)
     private String notes;
 
+    // Orders placed by this code are folded into sales_daily_rollups as they happen;
+    // rows from before that (null) are picked up once by SalesReportService's backfill
+    @JsonIgnore
+    @Column(name = "sales_rolled_up")
+    private Boolean salesRolledUp = true;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -51,9 +61,6 @@ public class Order {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
-        if (orderNumber == null) {
-            orderNumber = "ORD-" + System.currentTimeMillis();
-        }
     }
 
     @PreUpdate
@@ -94,6 +101,8 @@ public class Order {
     public void setItems(List<OrderItem> items) { this.items = items; }
     public String getNotes() { return notes; }
     public void setNotes(String notes) { this.notes = notes; }
+    public Boolean getSalesRolledUp() { return salesRolledUp; }
+    public void setSalesRolledUp(Boolean salesRolledUp) { this.salesRolledUp = salesRolledUp; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     public LocalDateTime getUpdatedAt() { return updatedAt; }
@@ -8,7 +8,10 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "payment_logs")
+@Table(name = "payment_logs", indexes = {
+    @Index(name = "ux_payment_logs_transaction_id", columnList = "transactionId", unique = true),
+    @Index(name = "idx_payment_logs_plan_timestamp", columnList = "plan_id, timestamp DESC")
+})
 @Data
 public class PaymentLog {
     // Lombok @Data provides getters/setters, but add explicit methods for clarity/framework compatibility
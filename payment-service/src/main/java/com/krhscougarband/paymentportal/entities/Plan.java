@@ -2,15 +2,22 @@ package com.krhscougarband.paymentportal.entities;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "plans")
+@Table(name = "plans", indexes = {
+    @Index(name = "idx_plans_status_id", columnList = "status, id"),
+    @Index(name = "idx_plans_total_owed_id", columnList = "totalOwed, id"),
+    @Index(name = "idx_plans_next_charge_at_id", columnList = "nextChargeAt, id")
+})
 @Data
+@DynamicUpdate // Only write changed columns so entity saves cannot clobber the atomic payment totals
 public class Plan {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -30,6 +37,9 @@ public class Plan {
     private String squareSubscriptionId;
     private BigDecimal totalOwed;
     private BigDecimal amountPaid;
+    // amountPaid/totalRefunded/netAmountPaid are only changed by atomic UPDATEs in PlanRepository
+    private BigDecimal totalRefunded;  // Sum of APPROVED refunds
+    private BigDecimal netAmountPaid;  // amountPaid - totalRefunded, so reads never touch refund_records
     private String status; // ACTIVE, CANCELLED, ERROR, COMPLETED
     private boolean active;
     private boolean paused; // Whether subscription is paused
@@ -38,11 +48,19 @@ public class Plan {
     private String cardLast4;
     private String cardBrand;
     private String cardHolderName;
+    private String squareCardId; // Square card-on-file id charged by the recurring billing run
     
     private LocalDateTime startDate;
+    private LocalDateTime nextChargeAt; // Advanced by the billing run after each successful charge
+    private LocalDateTime billingLeaseUntil; // Set while a billing worker owns this plan's current charge
     private LocalDateTime createdAt = LocalDateTime.now();
     private LocalDateTime updatedAt = LocalDateTime.now();
 
+    // Bumped by entity saves and by the atomic UPDATEs that change totals or status, so a stale read-modify-write fails
+    @Version
+    @Column(columnDefinition = "bigint not null default 0")
+    private long version;
+
     @OneToMany(mappedBy = "plan", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<RefundRecord> refundRecords;
 
@@ -67,6 +85,10 @@ public class Plan {
     public void setTotalOwed(BigDecimal totalOwed) { this.totalOwed = totalOwed; }
     public BigDecimal getAmountPaid() { return amountPaid; }
     public void setAmountPaid(BigDecimal amountPaid) { this.amountPaid = amountPaid; }
+    public BigDecimal getTotalRefunded() { return totalRefunded; }
+    public void setTotalRefunded(BigDecimal totalRefunded) { this.totalRefunded = totalRefunded; }
+    public BigDecimal getNetAmountPaid() { return netAmountPaid; }
+    public void setNetAmountPaid(BigDecimal netAmountPaid) { this.netAmountPaid = netAmountPaid; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
     public boolean isActive() { return active; }
@@ -79,8 +101,14 @@ public class Plan {
     public void setCardBrand(String cardBrand) { this.cardBrand = cardBrand; }
     public String getCardHolderName() { return cardHolderName; }
     public void setCardHolderName(String cardHolderName) { this.cardHolderName = cardHolderName; }
+    public String getSquareCardId() { return squareCardId; }
+    public void setSquareCardId(String squareCardId) { this.squareCardId = squareCardId; }
     public LocalDateTime getStartDate() { return startDate; }
     public void setStartDate(LocalDateTime startDate) { this.startDate = startDate; }
+    public LocalDateTime getNextChargeAt() { return nextChargeAt; }
+    public void setNextChargeAt(LocalDateTime nextChargeAt) { this.nextChargeAt = nextChargeAt; }
+    public LocalDateTime getBillingLeaseUntil() { return billingLeaseUntil; }
+    public void setBillingLeaseUntil(LocalDateTime billingLeaseUntil) { this.billingLeaseUntil = billingLeaseUntil; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     public LocalDateTime getUpdatedAt() { return updatedAt; }
@@ -102,15 +130,28 @@ public class Plan {
         if (amountPaid == null) {
             amountPaid = BigDecimal.ZERO;
         }
+        if (totalRefunded == null) {
+            totalRefunded = BigDecimal.ZERO;
+        }
+        netAmountPaid = amountPaid.subtract(totalRefunded);
         if (status == null) {
             status = "ACTIVE";
         }
         active = true;
+        if (nextChargeAt == null) {
+            nextChargeAt = calculateNextChargeDate();
+        }
     }
 
     @PreUpdate
     public void onUpdate() {
         updatedAt = LocalDateTime.now();
+        // The billing run owns nextChargeAt once set; only clear it on cancel or seed it if missing
+        if ("CANCELLED".equals(status)) {
+            nextChargeAt = null;
+        } else if (nextChargeAt == null && "ACTIVE".equals(status)) {
+            nextChargeAt = calculateNextChargeDate();
+        }
     }
     
     /**
@@ -119,33 +160,66 @@ public class Plan {
      */
     @Transient
     public LocalDateTime calculateNextChargeDate() {
+        return calculateNextChargeDate(startDate, status, frequency);
+    }
+
+    /**
+     * Same calculation for callers that only have the raw columns (e.g. projections)
+     */
+    public static LocalDateTime calculateNextChargeDate(LocalDateTime startDate, String status, String frequency) {
         if (startDate == null || "CANCELLED".equals(status) || "ONE_TIME".equals(frequency)) {
             return null;
         }
         
-        LocalDateTime nextCharge = startDate;
-        
-        // If we have a lastChargedDate, calculate from there
-        // For now, assume we charge from startDate + frequency interval
-        switch (frequency) {
-            case "MONTHLY":
-                nextCharge = startDate.plusMonths(1);
-                break;
+        return nextBoundaryAfter(startDate, frequency, LocalDateTime.now());
+    }
+
+    /**
+     * First billing date after now on the cycle that runs through anchor, and at
+     * least one period past anchor. Periods missed in between are skipped, never
+     * billed. Null for ONE_TIME plans.
+     */
+    public static LocalDateTime nextBoundaryAfter(LocalDateTime anchor, String frequency, LocalDateTime now) {
+        if (anchor == null || "ONE_TIME".equals(frequency)) {
+            return null;
+        }
+        int period = periodMonths(frequency);
+        // Step from anchor each time so month-end dates do not drift
+        long k = Math.max(Math.floorDiv(ChronoUnit.MONTHS.between(anchor, now), period) + 1, 1);
+        LocalDateTime next = anchor.plusMonths(k * period);
+        while (!next.isAfter(now)) {
+            next = anchor.plusMonths(++k * period);
+        }
+        return next;
+    }
+
+    /**
+     * One billing period after the given date; null for ONE_TIME plans
+     */
+    public static LocalDateTime nextChargeAfter(LocalDateTime from, String frequency) {
+        if (from == null) {
+            return null;
+        }
+        if ("ONE_TIME".equals(frequency)) {
+            return null;
+        }
+        return from.plusMonths(periodMonths(frequency));
+    }
+
+    /**
+     * Length of one billing period in months; anything unrecognised bills monthly
+     */
+    public static int periodMonths(String frequency) {
+        switch (frequency != null ? frequency : "") {
             case "QUARTERLY":
-                nextCharge = startDate.plusMonths(3);
-                break;
+                return 3;
             case "SEMI_ANNUAL":
-                nextCharge = startDate.plusMonths(6);
-                break;
+                return 6;
             case "ANNUAL":
-                nextCharge = startDate.plusYears(1);
-                break;
-            case "ONE_TIME":
-                return null;
+                return 12;
+            case "MONTHLY":
             default:
-                nextCharge = startDate.plusMonths(1); // Default to monthly
+                return 1; // Default to monthly
         }
-        
-        return nextCharge;
     }
 }
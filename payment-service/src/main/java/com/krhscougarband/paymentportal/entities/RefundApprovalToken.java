@@ -0,0 +1,38 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One approver's right to decide one refund. The emailed approve/deny links
+ * are HMAC-signed references to this row; the first link used sets usedAt and
+ * every other link for the refund stops working.
+ */
+@Entity
+@Table(name = "refund_approval_tokens", indexes = {
+    @Index(name = "idx_refund_approval_tokens_refund_id", columnList = "refundId")
+})
+@Data
+public class RefundApprovalToken {
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private UUID refundId;
+
+    @Column(nullable = false)
+    private String approverEmail;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    private LocalDateTime usedAt;
+
+    private String decision; // APPROVE, DENY
+}
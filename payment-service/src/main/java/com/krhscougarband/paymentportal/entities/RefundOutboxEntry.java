@@ -0,0 +1,36 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * An approved refund whose money has not gone back yet. Written in the
+ * approving transaction and deleted in the transaction that records the
+ * gateway result, so every approval is paid out and none is paid out twice.
+ */
+@Entity
+@Table(name = "refund_outbox", indexes = {
+    @Index(name = "idx_refund_outbox_available_at", columnList = "availableAt")
+})
+@Data
+public class RefundOutboxEntry {
+    @Id
+    private UUID refundId;
+
+    @Column(nullable = false, length = 45)
+    private String idempotencyKey; // sent to the gateway on every attempt; Square caps keys at 45 chars
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private LocalDateTime availableAt; // pushed forward while leased and after a failed attempt
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -9,7 +9,9 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "refund_records")
+@Table(name = "refund_records", indexes = {
+    @Index(name = "idx_refund_records_status_requested_at", columnList = "status, requestedAt")
+})
 @Data
 @NoArgsConstructor
 public class RefundRecord {
@@ -52,7 +54,7 @@ public class RefundRecord {
     
     private String refundReason;
     
-    private String status; // REQUESTED, APPROVED, PROCESSED, FAILED
+    private String status; // SUBMITTED, APPROVED, DENIED, FAILED
     
     private String squareRefundId; // Square refund transaction ID
     
@@ -70,10 +72,20 @@ public class RefundRecord {
     
     private LocalDateTime approvedAt;
     
-    private LocalDateTime processedAt;
+    private LocalDateTime processedAt; // set once the money has actually gone back (or the refund was denied)
     
     private String notes;
 
+    private LocalDateTime notifiedAt; // approver emails queued
+
+    @Column(length = 1000)
+    private String lastExecutionError;
+
+    // Status changes go through conditional updates that bump this; a stale entity save fails instead of overwriting
+    @Version
+    @Column(columnDefinition = "bigint not null default 0")
+    private long version;
+
     @PrePersist
     public void onCreate() {
         if (requestedAt == null) {
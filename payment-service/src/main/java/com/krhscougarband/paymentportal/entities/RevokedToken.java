@@ -7,7 +7,7 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "revoked_tokens", indexes = {
-    @Index(name = "idx_token_hash", columnList = "tokenHash"),
+    @Index(name = "ux_revoked_tokens_token_hash", columnList = "tokenHash", unique = true),
     @Index(name = "idx_expiry_time", columnList = "expiryTime")
 })
 @Data
@@ -16,7 +16,7 @@ public class RevokedToken {
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
     
-    @Column(nullable = false, unique = true, length = 64)
+    @Column(nullable = false, length = 64)
     private String tokenHash; // SHA-256 hash of the JWT token
     
     @Column(nullable = false)
@@ -0,0 +1,51 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Units and revenue per item per order day, kept up to date as orders are
+ * placed and cancelled. Cancellations count against the day the order was
+ * placed, so sold minus cancelled is that day's net. Amounts are in cents.
+ */
+@Entity
+@Table(name = "sales_daily_rollups", indexes = {
+    @Index(name = "idx_sales_daily_rollups_category_day", columnList = "category, day")
+})
+@IdClass(SalesDailyRollup.Key.class)
+@Data
+public class SalesDailyRollup {
+    @Id
+    private LocalDate day;
+
+    @Id
+    @Column(name = "item_id")
+    private Long itemId;
+
+    @Column(nullable = false)
+    private String category; // the item's category when last sold
+
+    private long unitsSold;
+
+    @Column(nullable = false)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    private long unitsCancelled;
+
+    @Column(nullable = false)
+    private BigDecimal revenueCancelled = BigDecimal.ZERO;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private LocalDate day;
+        private Long itemId;
+    }
+}
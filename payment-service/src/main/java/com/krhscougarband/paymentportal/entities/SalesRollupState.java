@@ -0,0 +1,23 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single row recording that the sales rollups have been built from the order
+ * history, so the backfill runs once no matter what the rollup table holds.
+ */
+@Entity
+@Table(name = "sales_rollup_state")
+@Data
+public class SalesRollupState {
+    public static final int SINGLETON_ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private LocalDateTime backfilledAt;
+}
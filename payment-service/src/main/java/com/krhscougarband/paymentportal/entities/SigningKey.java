@@ -0,0 +1,33 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * RSA key pair used to sign JWTs. Kept in the database so every instance
+ * signs with the same current key and can verify tokens minted by the others.
+ */
+@Entity
+@Table(name = "jwt_signing_keys", indexes = {
+    @Index(name = "idx_signing_keys_created_at", columnList = "createdAt")
+})
+@Data
+public class SigningKey {
+    @Id
+    @Column(length = 64)
+    private String kid;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String publicKey;  // Base64 X.509
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String privateKey; // PKCS#8, encrypted by SigningKeyCipher
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    // Set when a newer key takes over signing; null for the current key
+    private LocalDateTime retiredAt;
+}
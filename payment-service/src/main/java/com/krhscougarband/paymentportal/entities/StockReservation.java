@@ -0,0 +1,36 @@
+package com.krhscougarband.paymentportal.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Stock held for one user's cart. The quantity has already been taken off the
+ * item; checkout turns the hold into an order line, and an expired hold puts
+ * the stock back.
+ */
+@Entity
+@Table(name = "stock_reservations",
+       uniqueConstraints = @UniqueConstraint(name = "uk_stock_reservations_user_item", columnNames = {"user_email", "item_id"}),
+       indexes = @Index(name = "idx_stock_reservations_expires_at", columnList = "expiresAt"))
+@Data
+public class StockReservation {
+    @Id
+    private UUID id;
+
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    @Column(name = "item_id", nullable = false)
+    private Long itemId;
+
+    private int quantity;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
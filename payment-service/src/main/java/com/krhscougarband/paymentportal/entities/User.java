@@ -30,6 +30,8 @@ public class User {
         public void setSquareCustomerId(String squareCustomerId) { this.squareCustomerId = squareCustomerId; }
         public Set<Student> getStudents() { return students; }
         public void setStudents(Set<Student> students) { this.students = students; }
+        public int getTokenGeneration() { return tokenGeneration != null ? tokenGeneration : 0; }
+        public void setTokenGeneration(Integer tokenGeneration) { this.tokenGeneration = tokenGeneration; }
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     @EqualsAndHashCode.Include
@@ -43,6 +45,11 @@ public class User {
     private String lastName;
     private String role; // USER, ADMIN
     private String squareCustomerId;
+
+    // Bumped by logout-all; tokens carrying an older generation are rejected
+    @JsonIgnore
+    @Column(name = "token_generation")
+    private Integer tokenGeneration = 0;
     
     @ManyToMany(cascade = {CascadeType.PERSIST, CascadeType.MERGE}, fetch = FetchType.EAGER)
     @JoinTable(
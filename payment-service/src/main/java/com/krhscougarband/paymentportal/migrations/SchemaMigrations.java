@@ -0,0 +1,93 @@
+package com.krhscougarband.paymentportal.migrations;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Schema changes ddl-auto=update cannot make: it only ever adds objects, and
+ * it logs and carries on when an index cannot be built. Every step is
+ * idempotent and runs at startup, after Hibernate has updated the schema,
+ * under an advisory lock so instances starting together take turns. A
+ * failing step stops startup rather than leaving the schema half right.
+ */
+@Component
+public class SchemaMigrations {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrations.class);
+    private static final long LOCK_KEY = 0x5343_4845_4D41L; // "SCHEMA"
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // The EntityManagerFactory is only taken so this runs after Hibernate's schema update
+    public SchemaMigrations(EntityManagerFactory entityManagerFactory,
+                            JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")");
+            dropLegacyTokenHashIndexes();
+            uniquePaymentTransactionIds();
+        });
+    }
+
+    /**
+     * revoked_tokens.token_hash used to carry both a plain idx_token_hash index
+     * and an unnamed unique constraint. ux_revoked_tokens_token_hash replaces
+     * both; the old ones are dropped once it exists, so lookups and inserts
+     * maintain one index instead of three.
+     */
+    private void dropLegacyTokenHashIndexes() {
+        if (!exists("ux_revoked_tokens_token_hash")) {
+            return;
+        }
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_token_hash");
+        jdbcTemplate.execute(
+                "DO $$ DECLARE c text; BEGIN " +
+                "FOR c IN SELECT con.conname FROM pg_constraint con " +
+                "  JOIN pg_attribute a ON a.attrelid = con.conrelid AND a.attnum = ANY (con.conkey) " +
+                "  WHERE con.conrelid = to_regclass('revoked_tokens') AND con.contype = 'u' " +
+                "  AND a.attname = 'token_hash' AND array_length(con.conkey, 1) = 1 LOOP " +
+                "  EXECUTE format('ALTER TABLE revoked_tokens DROP CONSTRAINT %I', c); " +
+                "END LOOP; END $$");
+        log.debug("Legacy token_hash indexes on revoked_tokens removed");
+    }
+
+    /**
+     * insertIfAbsent and the billing engine rely on ON CONFLICT (transaction_id),
+     * which needs ux_payment_logs_transaction_id. ddl-auto cannot build it while
+     * older rows share a transaction_id, so every copy after the earliest gets
+     * its id suffixed (the payment rows themselves are kept), then the index is
+     * created here.
+     */
+    private void uniquePaymentTransactionIds() {
+        if (exists("ux_payment_logs_transaction_id")) {
+            return;
+        }
+        int renamed = jdbcTemplate.update(
+                "UPDATE payment_logs p SET transaction_id = LEFT(p.transaction_id, 200) || '#dup-' || p.id " +
+                "FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY transaction_id ORDER BY timestamp, id) AS rn " +
+                "      FROM payment_logs WHERE transaction_id IS NOT NULL) d " +
+                "WHERE p.id = d.id AND d.rn > 1");
+        if (renamed > 0) {
+            log.warn("Renamed {} duplicate payment_logs.transaction_id values before adding the unique index", renamed);
+        }
+        jdbcTemplate.execute(
+                "CREATE UNIQUE INDEX IF NOT EXISTS ux_payment_logs_transaction_id ON payment_logs (transaction_id)");
+    }
+
+    private boolean exists(String relation) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, relation));
+    }
+}
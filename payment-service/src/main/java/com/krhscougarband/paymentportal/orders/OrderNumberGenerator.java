@@ -0,0 +1,11 @@
+package com.krhscougarband.paymentportal.orders;
+
+/**
+ * Hands out order numbers. Implementations must never return the same number
+ * twice, across threads or across instances, and must not need a database
+ * round trip for most calls. Selected with orders.number.generator.
+ */
+public interface OrderNumberGenerator {
+
+    String next();
+}
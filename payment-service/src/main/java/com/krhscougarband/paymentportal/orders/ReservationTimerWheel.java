@@ -0,0 +1,72 @@
+package com.krhscougarband.paymentportal.orders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Hashed timing wheel for hold expiry. Each slot covers one tick; a deadline
+ * further out than one turn of the wheel stays in its slot until its tick
+ * comes round. Scheduling and advancing are O(1) per hold regardless of how
+ * many holds are pending. Entries are never cancelled: a hold that was
+ * extended or checked out simply finds nothing to release when it fires.
+ */
+final class ReservationTimerWheel {
+
+    private record Timeout(UUID id, long deadlineTick) {}
+
+    private final long tickMs;
+    private final List<List<Timeout>> slots;
+    private final int mask;
+    private long currentTick;
+    private int pending;
+
+    ReservationTimerWheel(long tickMs, int slotCount, long nowMs) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("slotCount must be a power of two");
+        }
+        this.tickMs = tickMs;
+        this.mask = slotCount - 1;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = nowMs / tickMs;
+    }
+
+    synchronized void schedule(UUID id, long deadlineMs) {
+        // Round up so nothing fires early; anything already due goes in the next tick
+        long tick = Math.max((deadlineMs + tickMs - 1) / tickMs, currentTick + 1);
+        slots.get((int) (tick & mask)).add(new Timeout(id, tick));
+        pending++;
+    }
+
+    /**
+     * Move the wheel up to nowMs and return the ids whose deadline has passed.
+     */
+    synchronized List<UUID> advance(long nowMs) {
+        long target = nowMs / tickMs;
+        if (target <= currentTick) {
+            return List.of();
+        }
+        List<UUID> due = new ArrayList<>();
+        // After a long pause one full turn visits every slot
+        long steps = Math.min(target - currentTick, slots.size());
+        for (long i = 1; i <= steps; i++) {
+            slots.get((int) ((currentTick + i) & mask)).removeIf(timeout -> {
+                if (timeout.deadlineTick() <= target) {
+                    due.add(timeout.id());
+                    return true;
+                }
+                return false;
+            });
+        }
+        currentTick = target;
+        pending -= due.size();
+        return due;
+    }
+
+    synchronized int pending() {
+        return pending;
+    }
+}
@@ -0,0 +1,76 @@
+package com.krhscougarband.paymentportal.orders;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Order numbers from a Postgres sequence, reserved a block at a time
+ * (orders.number.generator=sequence, the default). The sequence steps by the
+ * block size, so each nextval call reserves that many numbers for this
+ * instance and they are then handed out from memory. Numbers are unique
+ * across instances and increase within an instance; a restart skips whatever
+ * was left of its block.
+ */
+@Component
+@ConditionalOnProperty(name = "orders.number.generator", havingValue = "sequence", matchIfMissing = true)
+public class SequenceOrderNumberGenerator implements OrderNumberGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(SequenceOrderNumberGenerator.class);
+    private static final String SEQUENCE = "order_number_seq";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long limit;
+    private long blockSize;
+
+    @Value("${orders.number.block-size:50}")
+    private int configuredBlockSize;
+
+    @Value("${orders.number.prefix:ORD-}")
+    private String prefix;
+
+    public SequenceOrderNumberGenerator(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        // DDL cannot take bind parameters; the block size is an int from config
+        jdbcTemplate.getJdbcTemplate().execute("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE
+                + " START WITH 1000 INCREMENT BY " + Math.max(1, configuredBlockSize));
+        // Use the step the sequence really has: another instance may have created it with a different block size
+        Long increment = jdbcTemplate.queryForObject(
+                "SELECT increment_by FROM pg_sequences WHERE sequencename = :name",
+                Map.of("name", SEQUENCE), Long.class);
+        blockSize = increment != null ? increment : 1;
+        if (blockSize != configuredBlockSize) {
+            log.warn("{} steps by {}, not orders.number.block-size={}; using {}",
+                    SEQUENCE, blockSize, configuredBlockSize, blockSize);
+        }
+    }
+
+    @Override
+    public String next() {
+        lock.lock();
+        try {
+            if (next >= limit) {
+                Long start = jdbcTemplate.getJdbcTemplate().queryForObject(
+                        "SELECT nextval('" + SEQUENCE + "')", Long.class);
+                next = start;
+                limit = start + blockSize;
+            }
+            return prefix + next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.krhscougarband.paymentportal.orders;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Order numbers built in memory from the time, a node id and a per-millisecond
+ * counter (orders.number.generator=snowflake): 41 bits of milliseconds since
+ * 2024-01-01 UTC, 10 bits of node id and 12 bits of sequence. Needs no
+ * database, but every instance must run with a distinct orders.number.node-id.
+ * If the clock steps backwards, numbers keep counting from the last
+ * timestamp used rather than repeat.
+ */
+@Component
+@ConditionalOnProperty(name = "orders.number.generator", havingValue = "snowflake")
+public class SnowflakeOrderNumberGenerator implements OrderNumberGenerator {
+
+    private static final long EPOCH_MS = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private final String prefix;
+    private long lastTimestamp = -1;
+    private long sequence;
+
+    public SnowflakeOrderNumberGenerator(@Value("${orders.number.node-id:0}") long node,
+                                         @Value("${orders.number.prefix:ORD-}") String prefix) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("orders.number.node-id must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public synchronized String next() {
+        long timestamp = Math.max(System.currentTimeMillis() - EPOCH_MS, lastTimestamp);
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 4096 numbers used this millisecond; borrow the next one
+                timestamp++;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        return prefix + ((timestamp << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence);
+    }
+}
@@ -0,0 +1,202 @@
+package com.krhscougarband.paymentportal.orders;
+
+import com.krhscougarband.paymentportal.dto.StockHoldDto;
+import com.krhscougarband.paymentportal.entities.Item;
+import com.krhscougarband.paymentportal.entities.StockReservation;
+import com.krhscougarband.paymentportal.exceptions.BadRequestException;
+import com.krhscougarband.paymentportal.exceptions.ResourceNotFoundException;
+import com.krhscougarband.paymentportal.repositories.ItemRepository;
+import com.krhscougarband.paymentportal.repositories.StockReservationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Holds stock for carts. Putting an item in the cart takes the quantity off
+ * the item straight away with the same conditional update checkout uses, so
+ * what the shop shows as available is what can really be bought, and no item
+ * row stays locked while someone shops. Holds live in stock_reservations and
+ * expire cart.reservation.ttl-ms after they were first placed; changing the
+ * quantity does not restart the clock, so a hold cannot be kept alive by
+ * re-sending it. Each user may hold at most cart.reservation.max-per-item of
+ * an item and cart.reservation.max-total units overall. Expiry is driven
+ * by an in-memory timer wheel loaded from the table at startup; each release
+ * deletes the expired holds and gives their stock back in one statement. A
+ * slower sweep releases anything the wheel did not know about, such as holds
+ * taken on another instance that has since stopped.
+ */
+@Service
+public class StockReservationService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservationService.class);
+    private static final int RELEASE_BATCH_SIZE = 500;
+
+    private final StockReservationRepository reservationRepository;
+    private final ItemRepository itemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReservationTimerWheel wheel;
+
+    @Value("${cart.reservation.ttl-ms:900000}")
+    private long ttlMs;
+
+    @Value("${cart.reservation.max-per-item:10}")
+    private int maxPerItem;
+
+    @Value("${cart.reservation.max-total:25}")
+    private int maxTotal;
+
+    public StockReservationService(StockReservationRepository reservationRepository,
+                                   ItemRepository itemRepository,
+                                   TransactionTemplate transactionTemplate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${cart.reservation.tick-ms:1000}") long tickMs) {
+        this.reservationRepository = reservationRepository;
+        this.itemRepository = itemRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.wheel = new ReservationTimerWheel(tickMs, 1024, System.currentTimeMillis());
+        Gauge.builder("cart.reservations.timers", wheel, ReservationTimerWheel::pending)
+                .description("Hold expiry timers waiting in the timer wheel")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleExistingHolds() {
+        List<StockReservation> holds = reservationRepository.findAll();
+        holds.forEach(hold -> wheel.schedule(hold.getId(), epochMillis(hold.getExpiresAt())));
+        if (!holds.isEmpty()) {
+            log.info("Scheduled expiry for {} existing stock holds", holds.size());
+        }
+    }
+
+    /**
+     * Set how many of an item the user's cart holds, taking or returning the
+     * difference. The hold keeps the expiry it got when first placed; only a
+     * hold that has already expired starts a new clock. Zero releases the hold.
+     */
+    @Transactional
+    public StockHoldDto hold(String userEmail, Long itemId, int quantity) {
+        if (quantity < 0) {
+            throw new BadRequestException("Quantity cannot be negative");
+        }
+        if (quantity > maxPerItem) {
+            throw new BadRequestException("You can hold at most " + maxPerItem + " of an item");
+        }
+        Item item = itemRepository.findById(itemId)
+                .orElseThrow(() -> new ResourceNotFoundException("Item not found: " + itemId));
+        LocalDateTime now = LocalDateTime.now();
+        StockReservation existing = reservationRepository.findByUserEmailAndItemId(userEmail, itemId).orElse(null);
+        int held = existing != null ? existing.getQuantity() : 0;
+
+        if (item.getStockQuantity() == null || quantity == 0) {
+            // Nothing to hold: give back whatever was held before
+            if (existing != null) {
+                itemRepository.restoreStock(itemId, held, now);
+                reservationRepository.delete(existing);
+            }
+            return new StockHoldDto(itemId, quantity, null);
+        }
+
+        int change = quantity - held;
+        if (change > 0) {
+            if (!item.getAvailable()) {
+                throw new BadRequestException("Item not available: " + item.getName());
+            }
+            if (reservationRepository.sumLiveQuantityExcept(userEmail, itemId, now) + quantity > maxTotal) {
+                throw new BadRequestException("You can hold at most " + maxTotal + " items at a time");
+            }
+            if (itemRepository.decrementStock(itemId, change, now) == 0) {
+                throw new BadRequestException("Not enough stock for: " + item.getName());
+            }
+        } else if (change < 0) {
+            itemRepository.restoreStock(itemId, -change, now);
+        }
+
+        StockReservation reservation = existing;
+        if (reservation == null) {
+            reservation = new StockReservation();
+            reservation.setId(UUID.randomUUID());
+            reservation.setUserEmail(userEmail);
+            reservation.setItemId(itemId);
+        }
+        boolean newClock = reservation.getCreatedAt() == null || !reservation.getExpiresAt().isAfter(now);
+        if (newClock) {
+            // New hold, or one whose timer has not released it yet
+            reservation.setCreatedAt(now);
+            reservation.setExpiresAt(now.plus(Duration.ofMillis(ttlMs)));
+        }
+        reservation.setQuantity(quantity);
+        reservationRepository.save(reservation);
+        if (newClock) {
+            // A rolled-back hold leaves a timer with nothing to release, which is harmless
+            wheel.schedule(reservation.getId(), epochMillis(reservation.getExpiresAt()));
+        }
+        return new StockHoldDto(itemId, quantity, reservation.getExpiresAt());
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockHoldDto> getHolds(String userEmail) {
+        LocalDateTime now = LocalDateTime.now();
+        return reservationRepository.findByUserEmailOrderByCreatedAt(userEmail).stream()
+                .filter(hold -> hold.getExpiresAt().isAfter(now))
+                .map(hold -> new StockHoldDto(hold.getItemId(), hold.getQuantity(), hold.getExpiresAt()))
+                .toList();
+    }
+
+    /**
+     * Remove the user's live holds and return how many of each item they
+     * covered; that stock now belongs to the caller. Must run in the
+     * checkout transaction so a failed checkout keeps the holds.
+     */
+    public Map<Long, Integer> takeHolds(String userEmail) {
+        Map<Long, Integer> held = new HashMap<>();
+        for (Object[] row : reservationRepository.takeLiveHolds(userEmail, LocalDateTime.now())) {
+            held.merge(((Number) row[0]).longValue(), ((Number) row[1]).intValue(), Integer::sum);
+        }
+        return held;
+    }
+
+    @Scheduled(fixedRateString = "${cart.reservation.tick-ms:1000}")
+    public void releaseDue() {
+        List<UUID> due = wheel.advance(System.currentTimeMillis());
+        for (int i = 0; i < due.size(); i += RELEASE_BATCH_SIZE) {
+            List<UUID> batch = due.subList(i, Math.min(i + RELEASE_BATCH_SIZE, due.size()));
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        reservationRepository.releaseExpired(batch, LocalDateTime.now()));
+            } catch (Exception e) {
+                // Left for the sweep
+                log.warn("Could not release {} expired stock holds: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.reservation.sweep-interval-ms:60000}",
+               initialDelayString = "${cart.reservation.sweep-interval-ms:60000}")
+    public void sweepExpired() {
+        Integer items = transactionTemplate.execute(status ->
+                reservationRepository.releaseAllExpired(LocalDateTime.now()));
+        if (items != null && items > 0) {
+            log.info("Sweep returned expired stock holds to {} items", items);
+        }
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
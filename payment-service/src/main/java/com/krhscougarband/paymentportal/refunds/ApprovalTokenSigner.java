@@ -0,0 +1,108 @@
+package com.krhscougarband.paymentportal.refunds;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Signs and verifies the approve/deny links emailed to refund approvers.
+ * A link is base64url(token id | decision | expiry) + "." + HMAC-SHA256 of
+ * that payload, so a forged or edited link is rejected before the database
+ * is touched. One-time use is enforced separately on the token row.
+ * Without a dedicated refunds.approval.secret the key is derived from
+ * jwt.secret under a fixed purpose label, so a session token signature can
+ * never double as an approval link signature.
+ */
+@Component
+public class ApprovalTokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int PAYLOAD_LENGTH = 16 + 1 + 8;
+    private static final String KEY_PURPOSE = "refund-approval-link/v1";
+
+    private final SecretKeySpec key;
+
+    public ApprovalTokenSigner(@Value("${refunds.approval.secret:}") String secret,
+                               @Value("${jwt.secret}") String jwtSecret) {
+        byte[] keyBytes = secret != null && !secret.isBlank()
+                ? secret.getBytes(StandardCharsets.UTF_8)
+                : derive(jwtSecret);
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    private static byte[] derive(String masterSecret) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(masterSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            return mac.doFinal(KEY_PURPOSE.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to derive approval signing key", e);
+        }
+    }
+
+    public record ApprovalClaim(UUID tokenId, RefundDecision decision, Instant expiresAt) {}
+
+    public String sign(UUID tokenId, RefundDecision decision, Instant expiresAt) {
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_LENGTH)
+                .putLong(tokenId.getMostSignificantBits())
+                .putLong(tokenId.getLeastSignificantBits())
+                .put((byte) decision.ordinal())
+                .putLong(expiresAt.getEpochSecond());
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload.array()) + "." + encoder.encodeToString(mac(payload.array()));
+    }
+
+    /**
+     * Empty when the link is malformed, tampered with or past its expiry.
+     */
+    public Optional<ApprovalClaim> verify(String token, Instant now) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return Optional.empty();
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            payload = decoder.decode(token.substring(0, dot));
+            signature = decoder.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (payload.length != PAYLOAD_LENGTH || !MessageDigest.isEqual(mac(payload), signature)) {
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        UUID tokenId = new UUID(buffer.getLong(), buffer.getLong());
+        int decision = buffer.get();
+        Instant expiresAt = Instant.ofEpochSecond(buffer.getLong());
+        if (decision < 0 || decision >= RefundDecision.values().length || !expiresAt.isAfter(now)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ApprovalClaim(tokenId, RefundDecision.values()[decision], expiresAt));
+    }
+
+    private byte[] mac(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign approval token", e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.krhscougarband.paymentportal.refunds;
+
+import java.util.UUID;
+
+/**
+ * Published inside the transaction that approves or denies a refund.
+ */
+public record RefundDecidedEvent(UUID refundId, boolean approved) {}
@@ -0,0 +1,6 @@
+package com.krhscougarband.paymentportal.refunds;
+
+public enum RefundDecision {
+    APPROVE,
+    DENY
+}
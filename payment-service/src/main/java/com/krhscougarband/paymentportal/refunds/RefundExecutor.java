@@ -0,0 +1,223 @@
+package com.krhscougarband.paymentportal.refunds;
+
+import com.krhscougarband.paymentportal.billing.GatewayRateLimitedException;
+import com.krhscougarband.paymentportal.billing.RefundResult;
+import com.krhscougarband.paymentportal.entities.PaymentLog;
+import com.krhscougarband.paymentportal.entities.Plan;
+import com.krhscougarband.paymentportal.entities.RefundOutboxEntry;
+import com.krhscougarband.paymentportal.entities.RefundRecord;
+import com.krhscougarband.paymentportal.repositories.PaymentLogRepository;
+import com.krhscougarband.paymentportal.repositories.PlanRepository;
+import com.krhscougarband.paymentportal.repositories.RefundOutboxRepository;
+import com.krhscougarband.paymentportal.repositories.RefundRecordRepository;
+import com.krhscougarband.paymentportal.services.AuditService;
+import com.krhscougarband.paymentportal.services.SquareBillingService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends approved refunds back to the customer.
+ * Work comes from refund_outbox, which the approving transaction writes, so an
+ * approval can never be lost between commit and payout. Card refunds go through
+ * Square against the plan's most recent card payment that covers the amount.
+ * Every attempt sends the same idempotency key, so a retry after a crash, a
+ * timeout or an expired lease returns the original refund instead of issuing a
+ * second one. Other methods (cash, check) are paid out by hand and only marked
+ * as processed. The outcome and the outbox delete commit together. A refund the
+ * gateway rejects is marked FAILED and taken back out of the plan's refund total;
+ * one that keeps erroring is parked after max-attempts for someone to check in
+ * Square, since we cannot tell whether the money went out.
+ */
+@Service
+public class RefundExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(RefundExecutor.class);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(6);
+
+    private final RefundOutboxRepository refundOutboxRepository;
+    private final RefundRecordRepository refundRecordRepository;
+    private final PaymentLogRepository paymentLogRepository;
+    private final PlanRepository planRepository;
+    private final SquareBillingService squareBillingService;
+    private final AuditService auditService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+
+    @Value("${refunds.execution.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${refunds.execution.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${refunds.execution.backoff-ms:60000}")
+    private long backoffMs;
+
+    @Value("${refunds.execution.sweep-batch-size:50}")
+    private int sweepBatchSize;
+
+    public RefundExecutor(RefundOutboxRepository refundOutboxRepository,
+                          RefundRecordRepository refundRecordRepository,
+                          PaymentLogRepository paymentLogRepository,
+                          PlanRepository planRepository,
+                          SquareBillingService squareBillingService,
+                          AuditService auditService,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${refunds.execution.queue-capacity:1000}") int queueCapacity) {
+        this.refundOutboxRepository = refundOutboxRepository;
+        this.refundRecordRepository = refundRecordRepository;
+        this.paymentLogRepository = paymentLogRepository;
+        this.planRepository = planRepository;
+        this.squareBillingService = squareBillingService;
+        this.auditService = auditService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        // Overflow is dropped on purpose: the sweep picks those refunds up
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "refund-executor");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onRefundDecided(RefundDecidedEvent event) {
+        if (event.approved()) {
+            executor.execute(() -> execute(event.refundId()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${refunds.execution.sweep-interval-ms:60000}",
+               initialDelayString = "${refunds.execution.sweep-interval-ms:60000}")
+    public void sweepOutbox() {
+        LocalDateTime now = LocalDateTime.now();
+        List<UUID> claimed = transactionTemplate.execute(status -> refundOutboxRepository.claimDue(
+                now, now.plus(Duration.ofMillis(leaseMs)), maxAttempts, sweepBatchSize));
+        if (claimed != null) {
+            claimed.forEach(this::process);
+        }
+    }
+
+    public void execute(UUID refundId) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed = transactionTemplate.execute(status -> refundOutboxRepository.claim(
+                refundId, now, now.plus(Duration.ofMillis(leaseMs)), maxAttempts));
+        if (claimed != null && claimed > 0) {
+            process(refundId);
+        }
+    }
+
+    // Caller holds the lease on this outbox row
+    private void process(UUID refundId) {
+        RefundOutboxEntry entry = refundOutboxRepository.findById(refundId).orElse(null);
+        if (entry == null) {
+            return;
+        }
+        RefundRecord refund = refundRecordRepository.findById(refundId).orElse(null);
+        if (refund == null || !"APPROVED".equals(refund.getStatus()) || refund.getProcessedAt() != null) {
+            // Already settled by an earlier attempt; just drop the work item
+            transactionTemplate.executeWithoutResult(status -> refundOutboxRepository.deleteById(refundId));
+            return;
+        }
+
+        Plan plan = refund.getPlan();
+        try {
+            if (!"CARD".equalsIgnoreCase(refund.getRefundMethod())) {
+                complete(refundId, null, "manual");
+                return;
+            }
+            Optional<PaymentLog> payment = paymentLogRepository.findRefundableCardPayment(plan.getId(), refund.getRefundAmount());
+            if (payment.isEmpty()) {
+                fail(refund, "No single card payment on this plan covers the refund amount");
+                return;
+            }
+            RefundResult result = squareBillingService.refundPayment(payment.get().getTransactionId(),
+                    refund.getRefundAmount(), plan.getCurrency(), entry.getIdempotencyKey());
+            if (result.success()) {
+                complete(refundId, result.refundId(), "refunded");
+            } else {
+                fail(refund, result.failureReason());
+            }
+        } catch (GatewayRateLimitedException e) {
+            retryLater(entry, "Rate limited by gateway", "rate_limited");
+        } catch (Exception e) {
+            retryLater(entry, truncate(e.getMessage()), "error");
+        }
+    }
+
+    private void complete(UUID refundId, String squareRefundId, String outcome) {
+        transactionTemplate.executeWithoutResult(status -> {
+            refundRecordRepository.markExecuted(refundId, squareRefundId, LocalDateTime.now());
+            refundOutboxRepository.deleteById(refundId);
+        });
+        count(outcome);
+        log.info("Refund {} executed outcome={} squareRefundId={}", refundId, outcome, squareRefundId);
+    }
+
+    private void fail(RefundRecord refund, String reason) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (refundRecordRepository.markFailed(refund.getId(), truncate(reason)) > 0) {
+                UUID planId = refund.getPlan().getId();
+                planRepository.incrementTotalRefunded(planId, refund.getRefundAmount().negate(), LocalDateTime.now());
+                auditService.record("REFUND_FAILED", planId, refund.getRefundAmount(), "FAILED", refund.getId().toString());
+            }
+            refundOutboxRepository.deleteById(refund.getId());
+        });
+        count("failed");
+        log.warn("Refund {} failed: {}", refund.getId(), reason);
+    }
+
+    // The claim already counted this attempt
+    private void retryLater(RefundOutboxEntry entry, String error, String outcome) {
+        UUID refundId = entry.getRefundId();
+        long delay = Math.min(backoffMs << Math.min(entry.getAttempts() - 1, 20), MAX_BACKOFF.toMillis());
+        transactionTemplate.executeWithoutResult(status -> {
+            refundOutboxRepository.retryAt(refundId, error, LocalDateTime.now().plus(Duration.ofMillis(delay)));
+            refundRecordRepository.recordExecutionError(refundId, error);
+        });
+        count(outcome);
+        if (entry.getAttempts() >= maxAttempts) {
+            log.error("Refund {} still unconfirmed after {} attempts, leaving it in refund_outbox; check Square before retrying: {}",
+                    refundId, entry.getAttempts(), error);
+        } else {
+            log.warn("Refund {} execution failed (attempt {} of {}): {}", refundId, entry.getAttempts(), maxAttempts, error);
+        }
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("refunds.executed", "outcome", outcome).increment();
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,129 @@
+package com.krhscougarband.paymentportal.refunds;
+
+import com.krhscougarband.paymentportal.exceptions.ServiceUnavailableException;
+import com.krhscougarband.paymentportal.repositories.RefundRecordRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes changes to the pending refund queue to open approver dashboards over
+ * Server-Sent Events: "refund-submitted" carries the new queue row and
+ * "refund-resolved" the id and outcome of a decided refund.
+ * Events fire after the change commits and are written on a background
+ * thread, so a slow client never holds up the request that made the change.
+ * Only this instance's commits are pushed; dashboards reload the first page
+ * whenever they (re)connect, which also covers anything missed meanwhile.
+ */
+@Component
+public class RefundQueueBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(RefundQueueBroadcaster.class);
+
+    private final RefundRecordRepository refundRecordRepository;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor executor;
+
+    @Value("${refunds.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${refunds.stream.max-subscribers:100}")
+    private int maxSubscribers;
+
+    public RefundQueueBroadcaster(RefundRecordRepository refundRecordRepository, MeterRegistry meterRegistry) {
+        this.refundRecordRepository = refundRecordRepository;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000),
+                r -> {
+                    Thread t = new Thread(r, "refund-queue-sse");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+        Gauge.builder("refunds.stream.subscribers", emitters, List::size)
+                .description("Open approver dashboards receiving refund queue updates")
+                .register(meterRegistry);
+    }
+
+    public SseEmitter subscribe() {
+        if (emitters.size() >= maxSubscribers) {
+            throw new ServiceUnavailableException("Too many open refund dashboards. Please try again shortly.");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        return emitter;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onRefundSubmitted(RefundSubmittedEvent event) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> refundRecordRepository.findQueueItemById(event.refundId())
+                .ifPresent(item -> broadcast("refund-submitted", item)));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onRefundDecided(RefundDecidedEvent event) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        Map<String, Object> resolved = Map.of(
+                "id", event.refundId(),
+                "status", event.approved() ? "APPROVED" : "DENIED");
+        executor.execute(() -> broadcast("refund-resolved", resolved));
+    }
+
+    // Keeps idle connections open through proxies and weeds out clients that went away
+    @Scheduled(fixedDelayString = "${refunds.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        if (!emitters.isEmpty()) {
+            executor.execute(() -> {
+                for (SseEmitter emitter : emitters) {
+                    send(emitter, SseEmitter.event().comment("keepalive"));
+                }
+            });
+        }
+    }
+
+    private void broadcast(String name, Object data) {
+        for (SseEmitter emitter : emitters) {
+            send(emitter, SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            emitters.remove(emitter);
+            log.debug("Dropped refund queue subscriber: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        emitters.forEach(SseEmitter::complete);
+    }
+}
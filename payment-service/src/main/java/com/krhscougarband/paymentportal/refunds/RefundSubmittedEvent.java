@@ -0,0 +1,8 @@
+package com.krhscougarband.paymentportal.refunds;
+
+import java.util.UUID;
+
+/**
+ * Published inside the transaction that creates a SUBMITTED refund.
+ */
+public record RefundSubmittedEvent(UUID refundId) {}
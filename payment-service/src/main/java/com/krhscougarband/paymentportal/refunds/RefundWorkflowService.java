@@ -0,0 +1,256 @@
+package com.krhscougarband.paymentportal.refunds;
+
+import com.krhscougarband.paymentportal.entities.MailMessage;
+import com.krhscougarband.paymentportal.entities.RefundApprovalToken;
+import com.krhscougarband.paymentportal.entities.RefundRecord;
+import com.krhscougarband.paymentportal.entities.User;
+import com.krhscougarband.paymentportal.exceptions.BadRequestException;
+import com.krhscougarband.paymentportal.exceptions.ResourceNotFoundException;
+import com.krhscougarband.paymentportal.repositories.MailMessageRepository;
+import com.krhscougarband.paymentportal.repositories.RefundApprovalTokenRepository;
+import com.krhscougarband.paymentportal.repositories.RefundRecordRepository;
+import com.krhscougarband.paymentportal.repositories.UserRepository;
+import com.krhscougarband.paymentportal.services.PlanService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Approval side of the refund workflow.
+ * When a refund is submitted, every REFUND_APPROVER gets an email with signed
+ * one-time approve/deny links. The fan-out runs after the submitting
+ * transaction commits, on a background thread, and only queues rows in
+ * mail_outbox; the MailDispatcher delivers them. A sweep re-queues any
+ * refund whose fan-out was lost to a full queue or a restart.
+ */
+@Service
+public class RefundWorkflowService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefundWorkflowService.class);
+    private static final String APPROVER_ROLE = "REFUND_APPROVER";
+    private static final DateTimeFormatter EXPIRY_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy h:mm a");
+
+    private final RefundRecordRepository refundRecordRepository;
+    private final RefundApprovalTokenRepository tokenRepository;
+    private final MailMessageRepository mailMessageRepository;
+    private final UserRepository userRepository;
+    private final PlanService planService;
+    private final ApprovalTokenSigner signer;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+
+    @Value("${refunds.approval.base-url:http://localhost:8080/payments}")
+    private String baseUrl;
+
+    @Value("${refunds.approval.token-ttl-ms:604800000}")
+    private long tokenTtlMs;
+
+    @Value("${refunds.notify.sweep-batch-size:100}")
+    private int sweepBatchSize;
+
+    public RefundWorkflowService(RefundRecordRepository refundRecordRepository,
+                                 RefundApprovalTokenRepository tokenRepository,
+                                 MailMessageRepository mailMessageRepository,
+                                 UserRepository userRepository,
+                                 PlanService planService,
+                                 ApprovalTokenSigner signer,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${refunds.notify.queue-capacity:1000}") int queueCapacity) {
+        this.refundRecordRepository = refundRecordRepository;
+        this.tokenRepository = tokenRepository;
+        this.mailMessageRepository = mailMessageRepository;
+        this.userRepository = userRepository;
+        this.planService = planService;
+        this.signer = signer;
+        this.transactionTemplate = transactionTemplate;
+        // Overflow is dropped on purpose: the sweep picks those refunds up
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "refund-notify");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public record DecisionPreview(UUID refundId, String planName, BigDecimal amount, String refundMethod,
+                                  String requestedBy, RefundDecision decision, String approverEmail) {}
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onRefundSubmitted(RefundSubmittedEvent event) {
+        executor.execute(() -> notifyApprovers(event.refundId()));
+    }
+
+    // Runs inside the deciding transaction, so a stale link can never race a decision made in the UI
+    @EventListener
+    public void onRefundDecided(RefundDecidedEvent event) {
+        tokenRepository.revokeForRefund(event.refundId(), LocalDateTime.now());
+    }
+
+    @Scheduled(fixedDelayString = "${refunds.notify.sweep-interval-ms:60000}",
+               initialDelayString = "${refunds.notify.sweep-interval-ms:60000}")
+    public void sweepUnnotified() {
+        // Leave fresh refunds to the after-commit path
+        LocalDateTime before = LocalDateTime.now().minusSeconds(30);
+        for (UUID refundId : refundRecordRepository.findUnnotifiedIds(before, sweepBatchSize)) {
+            notifyApprovers(refundId);
+        }
+    }
+
+    /**
+     * Queue one approval email per approver. Claiming notifiedAt first makes
+     * this safe to run from the after-commit hook and the sweep at once.
+     */
+    public void notifyApprovers(UUID refundId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                if (refundRecordRepository.markNotified(refundId, now) == 0) {
+                    return;
+                }
+                RefundRecord refund = refundRecordRepository.findById(refundId).orElseThrow();
+                List<User> approvers = userRepository.findByRole(APPROVER_ROLE);
+                if (approvers.isEmpty()) {
+                    log.warn("Refund {} submitted but no user has the {} role", refundId, APPROVER_ROLE);
+                    return;
+                }
+
+                Instant expiresAt = Instant.now().plus(Duration.ofMillis(tokenTtlMs));
+                LocalDateTime expiresAtLocal = LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault());
+                List<RefundApprovalToken> tokens = new ArrayList<>();
+                List<MailMessage> messages = new ArrayList<>();
+                for (User approver : approvers) {
+                    RefundApprovalToken token = new RefundApprovalToken();
+                    token.setId(UUID.randomUUID());
+                    token.setRefundId(refundId);
+                    token.setApproverEmail(approver.getEmail());
+                    token.setCreatedAt(now);
+                    token.setExpiresAt(expiresAtLocal);
+                    tokens.add(token);
+
+                    MailMessage message = new MailMessage();
+                    message.setId(UUID.randomUUID());
+                    message.setRecipient(approver.getEmail());
+                    message.setSubject("Refund approval needed: " + formatAmount(refund.getRefundAmount()));
+                    message.setBody(approvalEmailBody(refund,
+                            signer.sign(token.getId(), RefundDecision.APPROVE, expiresAt),
+                            signer.sign(token.getId(), RefundDecision.DENY, expiresAt),
+                            expiresAtLocal));
+                    message.setStatus("PENDING");
+                    message.setNextAttemptAt(now);
+                    message.setCreatedAt(now);
+                    messages.add(message);
+                }
+                tokenRepository.saveAll(tokens);
+                mailMessageRepository.saveAll(messages);
+                log.info("Queued refund approval emails refundId={} approvers={}", refundId, approvers.size());
+            });
+        } catch (Exception e) {
+            log.warn("Could not queue approval emails for refund {}, sweep will retry: {}", refundId, e.getMessage());
+        }
+    }
+
+    /**
+     * What a link would do, for the confirmation page. Looking does not use the
+     * link, so mail scanners that prefetch URLs cannot approve anything.
+     */
+    @Transactional(readOnly = true)
+    public DecisionPreview preview(String token) {
+        ApprovalTokenSigner.ApprovalClaim claim = verify(token);
+        RefundApprovalToken stored = tokenRepository.findById(claim.tokenId())
+                .orElseThrow(() -> new BadRequestException("This link is invalid or has expired"));
+        if (stored.getUsedAt() != null) {
+            throw new BadRequestException("This link has already been used");
+        }
+        RefundRecord refund = refundRecordRepository.findById(stored.getRefundId())
+                .orElseThrow(() -> new ResourceNotFoundException("Refund record not found"));
+        return new DecisionPreview(refund.getId(),
+                refund.getPlan().getName(),
+                refund.getRefundAmount(),
+                refund.getRefundMethod(),
+                refund.getInitiatedByUser() != null ? refund.getInitiatedByUser().getEmail() : null,
+                claim.decision(),
+                stored.getApproverEmail());
+    }
+
+    /**
+     * Use a link. The token row is consumed in the same transaction as the
+     * approval, so a failed approval leaves the link usable.
+     */
+    @Transactional
+    public DecisionPreview decide(String token) {
+        ApprovalTokenSigner.ApprovalClaim claim = verify(token);
+        if (tokenRepository.consume(claim.tokenId(), claim.decision().name(), LocalDateTime.now()) == 0) {
+            throw new BadRequestException("This link has already been used or has expired");
+        }
+        RefundApprovalToken stored = tokenRepository.findById(claim.tokenId()).orElseThrow();
+        User approver = userRepository.findByEmail(stored.getApproverEmail())
+                .filter(u -> APPROVER_ROLE.equals(u.getRole()))
+                .orElseThrow(() -> new BadRequestException("You are no longer a refund approver"));
+
+        if (claim.decision() == RefundDecision.APPROVE) {
+            planService.approveRefund(stored.getRefundId(), approver.getEmail());
+        } else {
+            planService.denyRefund(stored.getRefundId(), approver.getEmail());
+        }
+        RefundRecord refund = refundRecordRepository.findById(stored.getRefundId()).orElseThrow();
+        return new DecisionPreview(refund.getId(),
+                refund.getPlan().getName(),
+                refund.getRefundAmount(),
+                refund.getRefundMethod(),
+                refund.getInitiatedByUser() != null ? refund.getInitiatedByUser().getEmail() : null,
+                claim.decision(),
+                approver.getEmail());
+    }
+
+    private ApprovalTokenSigner.ApprovalClaim verify(String token) {
+        return signer.verify(token, Instant.now())
+                .orElseThrow(() -> new BadRequestException("This link is invalid or has expired"));
+    }
+
+    private String approvalEmailBody(RefundRecord refund, String approveToken, String denyToken, LocalDateTime expiresAt) {
+        String link = baseUrl + "/refunds/decision?token=";
+        String requestedBy = refund.getInitiatedByUser() != null ? refund.getInitiatedByUser().getEmail() : "an administrator";
+        return "A refund needs your approval.\n\n" +
+               "Plan: " + refund.getPlan().getName() + "\n" +
+               "Amount: " + formatAmount(refund.getRefundAmount()) + "\n" +
+               "Method: " + refund.getRefundMethod() + "\n" +
+               "Requested by: " + requestedBy + "\n\n" +
+               "Approve: " + link + approveToken + "\n" +
+               "Deny: " + link + denyToken + "\n\n" +
+               "Each link can be used once and expires " + EXPIRY_FORMAT.format(expiresAt) + ".\n";
+    }
+
+    // Amounts are stored in cents
+    private static String formatAmount(BigDecimal cents) {
+        return "$" + cents.movePointLeft(2).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
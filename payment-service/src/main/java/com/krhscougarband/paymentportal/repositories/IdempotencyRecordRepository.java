@@ -0,0 +1,48 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    // Claim a key; returns 0 when another request already holds it
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO idempotency_keys (key_hash, request_hash, completed, created_at, expires_at) " +
+                   "VALUES (:keyHash, :requestHash, false, :now, :expiresAt) ON CONFLICT (key_hash) DO NOTHING",
+           nativeQuery = true)
+    int reserve(@Param("keyHash") String keyHash,
+                @Param("requestHash") String requestHash,
+                @Param("now") LocalDateTime now,
+                @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyRecord r SET r.completed = true, r.statusCode = :statusCode, " +
+           "r.contentType = :contentType, r.responseBody = :responseBody, r.expiresAt = :expiresAt " +
+           "WHERE r.keyHash = :keyHash")
+    int complete(@Param("keyHash") String keyHash,
+                 @Param("statusCode") int statusCode,
+                 @Param("contentType") String contentType,
+                 @Param("responseBody") String responseBody,
+                 @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.keyHash = :keyHash AND r.completed = false")
+    int release(@Param("keyHash") String keyHash);
+
+    // Also clears expired rows that were never completed (e.g. the instance died mid-request)
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM idempotency_keys WHERE key_hash IN (" +
+            "SELECT key_hash FROM idempotency_keys WHERE expires_at < :cutoffTime LIMIT :batchSize)",
+            nativeQuery = true)
+    int deleteExpiredBatch(@Param("cutoffTime") LocalDateTime cutoffTime, @Param("batchSize") int batchSize);
+}
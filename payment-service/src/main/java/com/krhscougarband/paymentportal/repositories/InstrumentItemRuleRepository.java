@@ -1,7 +1,9 @@
 package com.krhscougarband.paymentportal.repositories;
 
+import com.krhscougarband.paymentportal.dto.InstrumentRuleRow;
 import com.krhscougarband.paymentportal.entities.InstrumentItemRule;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,4 +11,9 @@ import java.util.List;
 @Repository
 public interface InstrumentItemRuleRepository extends JpaRepository<InstrumentItemRule, Long> {
     List<InstrumentItemRule> findByInstrumentIgnoreCase(String instrument);
+
+    // Reads the item id off the foreign key, so no items are loaded
+    @Query("SELECT new com.krhscougarband.paymentportal.dto.InstrumentRuleRow(r.instrument, r.item.id, r.quantity) " +
+           "FROM InstrumentItemRule r")
+    List<InstrumentRuleRow> findAllRows();
 }
@@ -1,9 +1,14 @@
 package com.krhscougarband.paymentportal.repositories;
 
+import com.krhscougarband.paymentportal.dto.ItemStockDto;
 import com.krhscougarband.paymentportal.entities.Item;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -11,4 +16,30 @@ public interface ItemRepository extends JpaRepository<Item, Long> {
     List<Item> findByAvailableTrue();
     List<Item> findByCategoryAndAvailableTrue(String category);
     List<Item> findByCategory(String category);
+
+    // Stock is read live, apart from the cached catalog, since every checkout and cart hold changes it
+    @Query("SELECT new com.krhscougarband.paymentportal.dto.ItemStockDto(i.id, i.stockQuantity) " +
+           "FROM Item i WHERE i.available = true")
+    List<ItemStockDto> findAvailableStock();
+
+    // Take stock only if enough is left; 0 means the item sold out underneath us
+    @Modifying
+    @Query("UPDATE Item i SET i.stockQuantity = i.stockQuantity - :quantity, i.updatedAt = :now " +
+           "WHERE i.id = :id AND i.stockQuantity >= :quantity")
+    int decrementStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
+
+    // Untracked items (null stock) are left alone
+    @Modifying
+    @Query("UPDATE Item i SET i.stockQuantity = i.stockQuantity + :quantity, i.updatedAt = :now " +
+           "WHERE i.id = :id AND i.stockQuantity IS NOT NULL")
+    int restoreStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
+
+    // Give back every line of a cancelled order at once
+    @Modifying
+    @Query(value = "UPDATE items i SET stock_quantity = i.stock_quantity + oi.quantity, updated_at = :now " +
+                   "FROM (SELECT item_id, SUM(quantity) AS quantity FROM order_items " +
+                   "      WHERE order_id = :orderId GROUP BY item_id) oi " +
+                   "WHERE i.id = oi.item_id AND i.stock_quantity IS NOT NULL",
+           nativeQuery = true)
+    int restoreStockForOrder(@Param("orderId") Long orderId, @Param("now") LocalDateTime now);
 }
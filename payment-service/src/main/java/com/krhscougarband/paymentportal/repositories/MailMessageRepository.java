@@ -0,0 +1,47 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.MailMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface MailMessageRepository extends JpaRepository<MailMessage, UUID> {
+
+    /**
+     * Lease a batch of due messages by pushing their next attempt past the lease.
+     * SKIP LOCKED lets several instances dispatch without sending a message twice.
+     * Not @Modifying: Spring Data only allows int/void there, and RETURNING makes this a result query.
+     */
+    @Transactional
+    @Query(value = "UPDATE mail_outbox SET next_attempt_at = :leaseUntil WHERE id IN (" +
+                   "  SELECT id FROM mail_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+                   "  ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING id",
+           nativeQuery = true)
+    List<UUID> claimDue(@Param("now") LocalDateTime now,
+                        @Param("leaseUntil") LocalDateTime leaseUntil,
+                        @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MailMessage m SET m.status = 'SENT', m.sentAt = :now, m.attempts = m.attempts + 1, " +
+           "m.lastError = NULL WHERE m.id IN :ids")
+    int markSent(@Param("ids") List<UUID> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MailMessage m SET m.attempts = m.attempts + 1, m.lastError = :error, " +
+           "m.nextAttemptAt = :nextAttemptAt, " +
+           "m.status = CASE WHEN m.attempts + 1 >= :maxAttempts THEN 'FAILED' ELSE 'PENDING' END " +
+           "WHERE m.id = :id")
+    int markFailed(@Param("id") UUID id,
+                   @Param("error") String error,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("maxAttempts") int maxAttempts);
+}
@@ -2,18 +2,25 @@ package com.krhscougarband.paymentportal.repositories;
 
 import com.krhscougarband.paymentportal.entities.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface OrderRepository extends JpaRepository<Order, Long> {
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderRepositoryCustom {
     List<Order> findByUserEmailOrderByCreatedAtDesc(String userEmail);
-    
-    @Query("SELECT o FROM Order o ORDER BY o.createdAt DESC")
-    List<Order> findAllByOrderByCreatedAtDesc();
-    
+
     Optional<Order> findByOrderNumber(String orderNumber);
+
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.krhscougarband.paymentportal.entities.Order.OrderStatus.CANCELLED, " +
+           "o.updatedAt = :now WHERE o.id = :id AND o.status IN (" +
+           "com.krhscougarband.paymentportal.entities.Order.OrderStatus.PENDING, " +
+           "com.krhscougarband.paymentportal.entities.Order.OrderStatus.CONFIRMED)")
+    int cancelIfOpen(@Param("id") Long id, @Param("now") LocalDateTime now);
 }
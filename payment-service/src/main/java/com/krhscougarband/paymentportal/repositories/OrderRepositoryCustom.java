@@ -0,0 +1,21 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.dto.OrderFilter;
+import com.krhscougarband.paymentportal.entities.Order;
+
+import java.util.List;
+
+public interface OrderRepositoryCustom {
+
+    /**
+     * Ids of one page of matching orders, newest first.
+     */
+    List<Long> findPageIds(OrderFilter filter, int offset, int limit);
+
+    long countByFilter(OrderFilter filter);
+
+    /**
+     * The given orders with their lines and items loaded, in the order of ids.
+     */
+    List<Order> findWithItems(List<Long> ids);
+}
@@ -0,0 +1,95 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.dto.OrderFilter;
+import com.krhscougarband.paymentportal.entities.Order;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dynamic JPQL for the admin order listing. A page is read as ids first and
+ * then fetch-joined with its lines, so the limit applies to orders rather
+ * than to joined rows and the whole page loads in two statements.
+ */
+public class OrderRepositoryImpl implements OrderRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Long> findPageIds(OrderFilter filter, int offset, int limit) {
+        Map<String, Object> params = new HashMap<>();
+        String jpql = "SELECT o.id FROM Order o " + filterClause(filter, params) +
+                      "ORDER BY o.createdAt DESC, o.id DESC";
+        TypedQuery<Long> query = entityManager.createQuery(jpql, Long.class);
+        params.forEach(query::setParameter);
+        return query.setFirstResult(offset).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public long countByFilter(OrderFilter filter) {
+        Map<String, Object> params = new HashMap<>();
+        String jpql = "SELECT COUNT(o) FROM Order o " + filterClause(filter, params);
+        TypedQuery<Long> query = entityManager.createQuery(jpql, Long.class);
+        params.forEach(query::setParameter);
+        return query.getSingleResult();
+    }
+
+    @Override
+    public List<Order> findWithItems(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Order> orders = entityManager.createQuery(
+                "SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items oi LEFT JOIN FETCH oi.item " +
+                "WHERE o.id IN :ids", Order.class)
+                .setParameter("ids", ids)
+                .getResultList();
+        Map<Long, Integer> position = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            position.put(ids.get(i), i);
+        }
+        return orders.stream().sorted(Comparator.comparing(o -> position.get(o.getId()))).toList();
+    }
+
+    private StringBuilder filterClause(OrderFilter filter, Map<String, Object> params) {
+        StringBuilder where = new StringBuilder();
+        if (filter == null) {
+            return where;
+        }
+        if (filter.getStatus() != null) {
+            and(where).append("o.status = :status ");
+            params.put("status", filter.getStatus());
+        }
+        if (filter.getPaymentStatus() != null) {
+            and(where).append("o.paymentStatus = :paymentStatus ");
+            params.put("paymentStatus", filter.getPaymentStatus());
+        }
+        if (filter.getCreatedFrom() != null) {
+            and(where).append("o.createdAt >= :createdFrom ");
+            params.put("createdFrom", filter.getCreatedFrom());
+        }
+        if (filter.getCreatedTo() != null) {
+            and(where).append("o.createdAt < :createdTo ");
+            params.put("createdTo", filter.getCreatedTo());
+        }
+        if (filter.getUserEmail() != null) {
+            and(where).append("LOWER(o.userEmail) LIKE :userEmail ");
+            params.put("userEmail", escapeLike(filter.getUserEmail().toLowerCase()) + "%");
+        }
+        return where;
+    }
+
+    private static StringBuilder and(StringBuilder where) {
+        return where.append(where.length() == 0 ? "WHERE " : "AND ");
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
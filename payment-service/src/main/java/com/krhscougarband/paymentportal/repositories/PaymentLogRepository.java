@@ -1,13 +1,62 @@
 package com.krhscougarband.paymentportal.repositories;
 
+import com.krhscougarband.paymentportal.dto.PaymentLogDto;
+import com.krhscougarband.paymentportal.dto.PaymentTotals;
 import com.krhscougarband.paymentportal.entities.PaymentLog;
 import com.krhscougarband.paymentportal.entities.Plan;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface PaymentLogRepository extends JpaRepository<PaymentLog, UUID> {
 
     List<PaymentLog> findByPlan(Plan plan);
+
+    // Newest first; served by idx_payment_logs_plan_timestamp
+    @Query(value = "SELECT new com.krhscougarband.paymentportal.dto.PaymentLogDto(" +
+                   "l.id, l.amount, l.status, l.paymentMethod, l.transactionId, l.timestamp) " +
+                   "FROM PaymentLog l WHERE l.plan.id = :planId ORDER BY l.timestamp DESC, l.id DESC",
+           countQuery = "SELECT COUNT(l) FROM PaymentLog l WHERE l.plan.id = :planId")
+    Page<PaymentLogDto> findHistoryByPlanId(@Param("planId") UUID planId, Pageable pageable);
+
+    @Query(value = "SELECT COALESCE(SUM(l.amount) FILTER (WHERE l.status = 'PAID'), 0) AS totalPaid, " +
+                   "(SELECT COALESCE(SUM(r.refund_amount), 0) FROM refund_records r " +
+                   " WHERE r.plan_id = :planId AND r.status = 'APPROVED') AS totalRefunded, " +
+                   "COALESCE(SUM(l.amount) FILTER (WHERE l.status = 'FAILED'), 0) AS totalFailed, " +
+                   "COUNT(*) FILTER (WHERE l.status = 'FAILED') AS failedCount " +
+                   "FROM payment_logs l WHERE l.plan_id = :planId",
+           nativeQuery = true)
+    PaymentTotals summarizeByPlanId(@Param("planId") UUID planId);
+
+    Optional<PaymentLog> findByTransactionId(String transactionId);
+
+    // Most recent card payment large enough to carry the refund on its own
+    @Query(value = "SELECT * FROM payment_logs WHERE plan_id = :planId AND status = 'PAID' " +
+                   "AND payment_method = 'CARD' AND transaction_id IS NOT NULL AND amount >= :amount " +
+                   "ORDER BY timestamp DESC LIMIT 1",
+           nativeQuery = true)
+    Optional<PaymentLog> findRefundableCardPayment(@Param("planId") UUID planId, @Param("amount") BigDecimal amount);
+
+    // Returns 0 when a payment with this transactionId was already recorded
+    @Modifying
+    @Query(value = "INSERT INTO payment_logs (id, plan_id, amount, payment_method, status, transaction_id, timestamp) " +
+                   "VALUES (:id, :planId, :amount, :paymentMethod, :status, :transactionId, :timestamp) " +
+                   "ON CONFLICT (transaction_id) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("id") UUID id,
+                       @Param("planId") UUID planId,
+                       @Param("amount") BigDecimal amount,
+                       @Param("paymentMethod") String paymentMethod,
+                       @Param("status") String status,
+                       @Param("transactionId") String transactionId,
+                       @Param("timestamp") LocalDateTime timestamp);
 }
@@ -3,12 +3,59 @@ package com.krhscougarband.paymentportal.repositories;
 import com.krhscougarband.paymentportal.entities.Plan;
 import com.krhscougarband.paymentportal.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
-public interface PlanRepository extends JpaRepository<Plan, UUID> {
+public interface PlanRepository extends JpaRepository<Plan, UUID>, PlanRepositoryCustom {
 
     // Get all plans for a specific user
     List<Plan> findByOwner(User owner);
+
+    @Query("SELECT p.id FROM Plan p WHERE p.id IN :ids")
+    List<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    // Atomic increments; SET expressions all see the pre-update row, so net uses the old amount_paid
+    @Modifying
+    @Query(value = "UPDATE plans SET amount_paid = COALESCE(amount_paid, 0) + :amount, " +
+                   "net_amount_paid = COALESCE(amount_paid, 0) + :amount - COALESCE(total_refunded, 0), " +
+                   "updated_at = :now, version = version + 1 WHERE id = :planId",
+           nativeQuery = true)
+    int incrementAmountPaid(@Param("planId") UUID planId, @Param("amount") BigDecimal amount, @Param("now") LocalDateTime now);
+
+    // Returns 0 instead of refunding more than was paid; concurrent approvals serialize on the row and re-check
+    @Modifying
+    @Query(value = "UPDATE plans SET total_refunded = COALESCE(total_refunded, 0) + :amount, " +
+                   "net_amount_paid = COALESCE(amount_paid, 0) - COALESCE(total_refunded, 0) - :amount, " +
+                   "updated_at = :now, version = version + 1 " +
+                   "WHERE id = :planId AND COALESCE(total_refunded, 0) + :amount <= COALESCE(amount_paid, 0)",
+           nativeQuery = true)
+    int incrementTotalRefunded(@Param("planId") UUID planId, @Param("amount") BigDecimal amount, @Param("now") LocalDateTime now);
+
+    /**
+     * Recompute total_refunded/net_amount_paid from approved refund records for
+     * plans whose stored values have drifted. Plans touched after settledBefore
+     * are skipped so an in-flight approval is not overwritten with a stale sum.
+     * Returns the number of plans corrected.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE plans p SET total_refunded = x.total, " +
+                   "net_amount_paid = COALESCE(p.amount_paid, 0) - x.total, version = p.version + 1 " +
+                   "FROM (SELECT pl.id, COALESCE(SUM(r.refund_amount), 0) AS total FROM plans pl " +
+                   "      LEFT JOIN refund_records r ON r.plan_id = pl.id AND r.status = 'APPROVED' " +
+                   "      GROUP BY pl.id) x " +
+                   "WHERE x.id = p.id " +
+                   "AND (p.net_amount_paid IS NULL OR p.updated_at IS NULL OR p.updated_at < :settledBefore) " +
+                   "AND (p.total_refunded IS DISTINCT FROM x.total " +
+                   "     OR p.net_amount_paid IS DISTINCT FROM COALESCE(p.amount_paid, 0) - x.total)",
+           nativeQuery = true)
+    int reconcileRefundTotals(@Param("settledBefore") LocalDateTime settledBefore);
 }
@@ -0,0 +1,48 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.dto.PlanBulkAction;
+import com.krhscougarband.paymentportal.dto.PlanFilter;
+import com.krhscougarband.paymentportal.dto.PlanSort;
+import com.krhscougarband.paymentportal.dto.PlanSummaryRow;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface PlanRepositoryCustom {
+
+    /**
+     * Keyset page of plan summaries. Pass a null afterId for the first page;
+     * afterValue may legitimately be null when the previous page ended in the null tail.
+     */
+    List<PlanSummaryRow> findSummaryPage(PlanFilter filter, PlanSort sort, boolean descending,
+                                         Object afterValue, UUID afterId, int limit);
+
+    long countSummaries(PlanFilter filter);
+
+    /**
+     * Row count from planner statistics for plans in the current schema; -1 if
+     * the table has no statistics yet (or looks empty), so callers count exactly.
+     */
+    long estimatePlanCount();
+
+    /**
+     * One-off backfill for rows created before next_charge_at was persisted: the
+     * first billing date after now on each plan's cycle from its start date.
+     */
+    int backfillNextChargeAt(LocalDateTime now);
+
+    /**
+     * Lease up to limit due plans to the caller and return their ids.
+     * Rows locked by another instance are skipped rather than waited on.
+     */
+    List<UUID> claimDuePlans(LocalDateTime now, LocalDateTime leaseUntil, int limit);
+
+    List<UUID> findIdsByFilter(PlanFilter filter, int limit);
+
+    /**
+     * Apply the transition to every eligible plan in ids with one UPDATE and
+     * return the ids that changed. Ineligible plans are left untouched.
+     */
+    List<UUID> applyBulkAction(PlanBulkAction action, List<UUID> ids, LocalDateTime now);
+}
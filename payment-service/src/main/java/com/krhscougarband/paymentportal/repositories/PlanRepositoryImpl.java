@@ -0,0 +1,212 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.dto.PlanBulkAction;
+import com.krhscougarband.paymentportal.dto.PlanFilter;
+import com.krhscougarband.paymentportal.dto.PlanSort;
+import com.krhscougarband.paymentportal.dto.PlanSummaryRow;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Dynamic JPQL for the admin plan listing. Filters and the keyset predicate are
+ * appended only when present so the planner sees a simple query.
+ */
+public class PlanRepositoryImpl implements PlanRepositoryCustom {
+
+    static final String SUMMARY_SELECT =
+            "SELECT new com.krhscougarband.paymentportal.dto.PlanSummaryRow(" +
+            "p.id, p.name, p.amount, p.totalOwed, p.amountPaid, p.totalRefunded, " +
+            "p.frequency, p.currency, p.status, p.paused, p.startDate, p.nextChargeAt, " +
+            "s.studentId, s.firstName, s.lastName, o.email) ";
+
+    private static final String FROM = "FROM Plan p LEFT JOIN p.owner o LEFT JOIN p.student s ";
+
+    private static final String PERIOD_MONTHS =
+            "(CASE frequency WHEN 'QUARTERLY' THEN 3 WHEN 'SEMI_ANNUAL' THEN 6 WHEN 'ANNUAL' THEN 12 ELSE 1 END)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<PlanSummaryRow> findSummaryPage(PlanFilter filter, PlanSort sort, boolean descending,
+                                                Object afterValue, UUID afterId, int limit) {
+        Map<String, Object> params = new HashMap<>();
+        StringBuilder jpql = new StringBuilder(SUMMARY_SELECT).append(FROM);
+        StringBuilder where = filterClause(filter, params);
+
+        if (afterId != null) {
+            String path = sort.getPath();
+            String cmp = descending ? "<" : ">";
+            where.append(where.length() == 0 ? "WHERE " : "AND ");
+            if (afterValue == null) {
+                // Already in the NULLS LAST tail: only the id tie-breaker advances
+                where.append("(").append(path).append(" IS NULL AND p.id ").append(cmp).append(" :afterId) ");
+            } else {
+                where.append("(").append(path).append(" ").append(cmp).append(" :afterValue OR ")
+                     .append(path).append(" IS NULL OR (")
+                     .append(path).append(" = :afterValue AND p.id ").append(cmp).append(" :afterId)) ");
+                params.put("afterValue", afterValue);
+            }
+            params.put("afterId", afterId);
+        }
+
+        String direction = descending ? "DESC" : "ASC";
+        jpql.append(where)
+            .append("ORDER BY ").append(sort.getPath()).append(' ').append(direction).append(" NULLS LAST, ")
+            .append("p.id ").append(direction);
+
+        TypedQuery<PlanSummaryRow> query = entityManager.createQuery(jpql.toString(), PlanSummaryRow.class);
+        params.forEach(query::setParameter);
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public long countSummaries(PlanFilter filter) {
+        Map<String, Object> params = new HashMap<>();
+        String jpql = "SELECT COUNT(p) " + FROM + filterClause(filter, params);
+        TypedQuery<Long> query = entityManager.createQuery(jpql, Long.class);
+        params.forEach(query::setParameter);
+        return query.getSingleResult();
+    }
+
+    @Override
+    public long estimatePlanCount() {
+        List<?> result = entityManager
+                .createNativeQuery("SELECT CAST(c.reltuples AS BIGINT) FROM pg_class c " +
+                        "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                        "WHERE c.relname = 'plans' AND n.nspname = current_schema()")
+                .getResultList();
+        // reltuples is -1 (0 before PostgreSQL 14) until the table is first vacuumed or analyzed
+        long estimate = result.isEmpty() || result.get(0) == null ? -1 : ((Number) result.get(0)).longValue();
+        return estimate > 0 ? estimate : -1;
+    }
+
+    @Override
+    @Transactional
+    public int backfillNextChargeAt(LocalDateTime now) {
+        return entityManager.createNativeQuery(
+                "UPDATE plans SET next_charge_at = " + boundaryAfterNow("start_date") + " " +
+                "WHERE next_charge_at IS NULL AND start_date IS NOT NULL " +
+                "AND COALESCE(status, '') <> 'CANCELLED' AND COALESCE(frequency, '') <> 'ONE_TIME'")
+                .setParameter("now", now)
+                .executeUpdate();
+    }
+
+    /**
+     * SQL form of Plan.nextBoundaryAfter: the first date after :now on the cycle
+     * through the anchor column, at least one period past it. age() can count one
+     * month short around month ends, so the smallest of three candidates wins.
+     */
+    private static String boundaryAfterNow(String anchor) {
+        String age = "age(CAST(:now AS timestamp), " + anchor + ")";
+        String from = "GREATEST(CAST(FLOOR((EXTRACT(YEAR FROM " + age + ") * 12 + EXTRACT(MONTH FROM " + age + ")) / " +
+                PERIOD_MONTHS + ") AS int), 1)";
+        String candidate = anchor + " + make_interval(months => " + PERIOD_MONTHS + " * k)";
+        return "(SELECT MIN(" + candidate + ") FROM generate_series(" + from + ", " + from + " + 2) k " +
+                "WHERE " + candidate + " > CAST(:now AS timestamp))";
+    }
+
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public List<UUID> claimDuePlans(LocalDateTime now, LocalDateTime leaseUntil, int limit) {
+        // Lock-and-lease in one statement; the row locks are released at commit but the lease keeps others off
+        List<Object> ids = entityManager.createNativeQuery(
+                "WITH due AS (" +
+                "  SELECT id FROM plans " +
+                "  WHERE next_charge_at <= :now AND status = 'ACTIVE' AND active AND NOT paused " +
+                "  AND (billing_lease_until IS NULL OR billing_lease_until < :now) " +
+                "  ORDER BY next_charge_at, id LIMIT :limit " +
+                "  FOR UPDATE SKIP LOCKED) " +
+                "UPDATE plans p SET billing_lease_until = :leaseUntil FROM due WHERE p.id = due.id " +
+                "RETURNING p.id")
+                .setParameter("now", now)
+                .setParameter("leaseUntil", leaseUntil)
+                .setParameter("limit", limit)
+                .getResultList();
+        return ids.stream().map(id -> id instanceof UUID uuid ? uuid : UUID.fromString(id.toString())).toList();
+    }
+
+    @Override
+    public List<UUID> findIdsByFilter(PlanFilter filter, int limit) {
+        Map<String, Object> params = new HashMap<>();
+        String jpql = "SELECT p.id " + FROM + filterClause(filter, params) + "ORDER BY p.id";
+        TypedQuery<UUID> query = entityManager.createQuery(jpql, UUID.class);
+        params.forEach(query::setParameter);
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<UUID> applyBulkAction(PlanBulkAction action, List<UUID> ids, LocalDateTime now) {
+        // Eligibility mirrors the single-plan operations in PlanService
+        String set = switch (action) {
+            case PAUSE -> "paused = true WHERE active AND COALESCE(status, '') <> 'CANCELLED' AND NOT paused";
+            case RESUME -> "paused = false, next_charge_at = CASE WHEN next_charge_at <= CAST(:now AS timestamp) " +
+                           "THEN " + boundaryAfterNow("next_charge_at") + " ELSE next_charge_at END " +
+                           "WHERE active AND paused";
+            case CANCEL -> "status = 'CANCELLED', active = false, next_charge_at = NULL " +
+                           "WHERE COALESCE(status, '') <> 'CANCELLED'";
+            case REACTIVATE -> "status = 'ACTIVE', active = true, next_charge_at = CASE " +
+                               "WHEN status = 'ERROR' AND next_charge_at IS NOT NULL " +
+                               "THEN " + boundaryAfterNow("next_charge_at") + " " +
+                               "ELSE CASE frequency " +
+                               "WHEN 'ONE_TIME' THEN NULL " +
+                               "WHEN 'QUARTERLY' THEN CAST(:now AS timestamp) + INTERVAL '3 months' " +
+                               "WHEN 'SEMI_ANNUAL' THEN CAST(:now AS timestamp) + INTERVAL '6 months' " +
+                               "WHEN 'ANNUAL' THEN CAST(:now AS timestamp) + INTERVAL '1 year' " +
+                               "ELSE CAST(:now AS timestamp) + INTERVAL '1 month' END END " +
+                               "WHERE status IN ('CANCELLED', 'ERROR')";
+        };
+        List<Object> updated = entityManager.createNativeQuery(
+                "UPDATE plans SET updated_at = :now, version = version + 1, " + set + " AND id IN (:ids) RETURNING id")
+                .setParameter("now", now)
+                .setParameter("ids", ids)
+                .getResultList();
+        return updated.stream().map(id -> id instanceof UUID uuid ? uuid : UUID.fromString(id.toString())).toList();
+    }
+
+    private StringBuilder filterClause(PlanFilter filter, Map<String, Object> params) {
+        StringBuilder where = new StringBuilder();
+        if (filter == null) {
+            return where;
+        }
+        if (filter.getStatus() != null) {
+            and(where).append("p.status = :status ");
+            params.put("status", filter.getStatus());
+        }
+        if (filter.getFrequency() != null) {
+            and(where).append("p.frequency = :frequency ");
+            params.put("frequency", filter.getFrequency());
+        }
+        if (filter.getStudentId() != null) {
+            and(where).append("s.studentId = :studentId ");
+            params.put("studentId", filter.getStudentId());
+        }
+        if (filter.getOwnerEmail() != null) {
+            and(where).append("LOWER(o.email) LIKE :ownerEmail ");
+            params.put("ownerEmail", escapeLike(filter.getOwnerEmail().toLowerCase()) + "%");
+        }
+        if (filter.getPaused() != null) {
+            and(where).append("p.paused = :paused ");
+            params.put("paused", filter.getPaused());
+        }
+        return where;
+    }
+
+    private static StringBuilder and(StringBuilder where) {
+        return where.append(where.length() == 0 ? "WHERE " : "AND ");
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,24 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.RefundApprovalToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public interface RefundApprovalTokenRepository extends JpaRepository<RefundApprovalToken, UUID> {
+
+    // Returns 0 when the token was already used or has expired
+    @Modifying
+    @Query("UPDATE RefundApprovalToken t SET t.usedAt = :now, t.decision = :decision " +
+           "WHERE t.id = :id AND t.usedAt IS NULL AND t.expiresAt > :now")
+    int consume(@Param("id") UUID id, @Param("decision") String decision, @Param("now") LocalDateTime now);
+
+    // Once a refund is decided, the other approvers' links are dead
+    @Modifying
+    @Query("UPDATE RefundApprovalToken t SET t.usedAt = :now WHERE t.refundId = :refundId AND t.usedAt IS NULL")
+    int revokeForRefund(@Param("refundId") UUID refundId, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,52 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.RefundOutboxEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface RefundOutboxRepository extends JpaRepository<RefundOutboxEntry, UUID> {
+
+    @Modifying
+    @Query(value = "INSERT INTO refund_outbox (refund_id, idempotency_key, attempts, available_at, created_at) " +
+                   "VALUES (:refundId, :idempotencyKey, 0, :now, :now) ON CONFLICT (refund_id) DO NOTHING",
+           nativeQuery = true)
+    int enqueue(@Param("refundId") UUID refundId,
+                @Param("idempotencyKey") String idempotencyKey,
+                @Param("now") LocalDateTime now);
+
+    // Lease one refund; returns 0 when another worker holds it or it is out of attempts
+    @Modifying
+    @Query(value = "UPDATE refund_outbox SET attempts = attempts + 1, available_at = :leaseUntil " +
+                   "WHERE refund_id = :refundId AND available_at <= :now AND attempts < :maxAttempts",
+           nativeQuery = true)
+    int claim(@Param("refundId") UUID refundId,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("maxAttempts") int maxAttempts);
+
+    // Not @Modifying: RETURNING makes this a result query, and @Modifying only allows int/void
+    @Transactional
+    @Query(value = "UPDATE refund_outbox SET attempts = attempts + 1, available_at = :leaseUntil " +
+                   "WHERE refund_id IN (" +
+                   "  SELECT refund_id FROM refund_outbox WHERE available_at <= :now AND attempts < :maxAttempts " +
+                   "  ORDER BY available_at LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING refund_id",
+           nativeQuery = true)
+    List<UUID> claimDue(@Param("now") LocalDateTime now,
+                        @Param("leaseUntil") LocalDateTime leaseUntil,
+                        @Param("maxAttempts") int maxAttempts,
+                        @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE RefundOutboxEntry e SET e.lastError = :error, e.availableAt = :availableAt WHERE e.refundId = :refundId")
+    int retryAt(@Param("refundId") UUID refundId,
+                @Param("error") String error,
+                @Param("availableAt") LocalDateTime availableAt);
+}
@@ -1,13 +1,20 @@
 package com.krhscougarband.paymentportal.repositories;
 
+import com.krhscougarband.paymentportal.dto.PendingRefundDto;
 import com.krhscougarband.paymentportal.entities.Plan;
 import com.krhscougarband.paymentportal.entities.RefundRecord;
+import com.krhscougarband.paymentportal.entities.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -19,6 +26,56 @@ public interface RefundRecordRepository extends JpaRepository<RefundRecord, UUID
     Page<RefundRecord> findByStatus(String status, Pageable pageable);
     
     List<RefundRecord> findByPlanAndStatus(Plan plan, String status);
-    
-    List<RefundRecord> findByStatus(String status);
+
+    // Oldest first; one query with the plan, owner and requester joined in, served by idx_refund_records_status_requested_at
+    @Query(value = "SELECT new com.krhscougarband.paymentportal.dto.PendingRefundDto(" +
+                   "r.id, p.id, p.name, o.email, r.refundAmount, r.refundMethod, r.requestedAt, u.email) " +
+                   "FROM RefundRecord r JOIN r.plan p LEFT JOIN p.owner o LEFT JOIN r.initiatedByUser u " +
+                   "WHERE r.status = :status ORDER BY r.requestedAt, r.id",
+           countQuery = "SELECT COUNT(r) FROM RefundRecord r WHERE r.status = :status")
+    Page<PendingRefundDto> findQueueByStatus(@Param("status") String status, Pageable pageable);
+
+    @Query("SELECT new com.krhscougarband.paymentportal.dto.PendingRefundDto(" +
+           "r.id, p.id, p.name, o.email, r.refundAmount, r.refundMethod, r.requestedAt, u.email) " +
+           "FROM RefundRecord r JOIN r.plan p LEFT JOIN p.owner o LEFT JOIN r.initiatedByUser u " +
+           "WHERE r.id = :id")
+    Optional<PendingRefundDto> findQueueItemById(@Param("id") UUID id);
+
+    // Returns 0 when approvers were already notified (or the refund was decided first)
+    @Modifying
+    @Query("UPDATE RefundRecord r SET r.notifiedAt = :now " +
+           "WHERE r.id = :id AND r.notifiedAt IS NULL AND r.status = 'SUBMITTED'")
+    int markNotified(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
+    @Query(value = "SELECT id FROM refund_records WHERE status = 'SUBMITTED' AND notified_at IS NULL " +
+                   "AND requested_at < :before ORDER BY requested_at LIMIT :limit",
+           nativeQuery = true)
+    List<UUID> findUnnotifiedIds(@Param("before") LocalDateTime before, @Param("limit") int limit);
+
+    // Status transitions are conditional so two approvers acting at once cannot both win; 0 means someone else did
+    @Modifying
+    @Query("UPDATE RefundRecord r SET r.status = 'APPROVED', r.approvedAt = :now, r.approvedByUser = :approver, " +
+           "r.version = r.version + 1 WHERE r.id = :id AND r.status = 'SUBMITTED'")
+    int approveIfSubmitted(@Param("id") UUID id, @Param("approver") User approver, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE RefundRecord r SET r.status = 'DENIED', r.processedAt = :now, r.approvedByUser = :approver, " +
+           "r.version = r.version + 1 WHERE r.id = :id AND r.status = 'SUBMITTED'")
+    int denyIfSubmitted(@Param("id") UUID id, @Param("approver") User approver, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE RefundRecord r SET r.processedAt = :now, r.squareRefundId = :squareRefundId, " +
+           "r.lastExecutionError = NULL, r.version = r.version + 1 " +
+           "WHERE r.id = :id AND r.status = 'APPROVED' AND r.processedAt IS NULL")
+    int markExecuted(@Param("id") UUID id, @Param("squareRefundId") String squareRefundId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE RefundRecord r SET r.lastExecutionError = :error WHERE r.id = :id")
+    int recordExecutionError(@Param("id") UUID id, @Param("error") String error);
+
+    // Returns 0 unless the refund was still an unexecuted approval
+    @Modifying
+    @Query("UPDATE RefundRecord r SET r.status = 'FAILED', r.lastExecutionError = :error, " +
+           "r.version = r.version + 1 WHERE r.id = :id AND r.status = 'APPROVED' AND r.processedAt IS NULL")
+    int markFailed(@Param("id") UUID id, @Param("error") String error);
 }
@@ -7,19 +7,21 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 public interface RevokedTokenRepository extends JpaRepository<RevokedToken, UUID> {
     
     boolean existsByTokenHash(String tokenHash);
+
+    @Query("SELECT r.tokenHash FROM RevokedToken r WHERE r.expiryTime > :now")
+    List<String> findLiveTokenHashes(LocalDateTime now);
     
+    // Bounded delete so cleanup never holds locks on the whole expired range at once
     @Modifying
     @Transactional
-    @Query("DELETE FROM RevokedToken rt WHERE rt.userEmail = :email")
-    void deleteByUserEmail(String email);
-    
-    @Modifying
-    @Transactional
-    @Query("DELETE FROM RevokedToken rt WHERE rt.expiryTime < :cutoffTime")
-    void deleteExpiredTokens(LocalDateTime cutoffTime);
+    @Query(value = "DELETE FROM revoked_tokens WHERE id IN (" +
+            "SELECT id FROM revoked_tokens WHERE expiry_time < :cutoffTime LIMIT :batchSize)",
+            nativeQuery = true)
+    int deleteExpiredTokensBatch(LocalDateTime cutoffTime, int batchSize);
 }
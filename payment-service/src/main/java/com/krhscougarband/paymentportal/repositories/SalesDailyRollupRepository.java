@@ -0,0 +1,62 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.SalesDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+
+public interface SalesDailyRollupRepository extends JpaRepository<SalesDailyRollup, SalesDailyRollup.Key> {
+
+    // Add an order's lines to its day; runs in the ordering transaction after the lines are written
+    @Modifying
+    @Query(value = "INSERT INTO sales_daily_rollups (day, item_id, category, units_sold, revenue, units_cancelled, revenue_cancelled) " +
+                   "SELECT :day, oi.item_id, i.category, SUM(oi.quantity), SUM(oi.subtotal), 0, 0 " +
+                   "FROM order_items oi JOIN items i ON i.id = oi.item_id WHERE oi.order_id = :orderId " +
+                   "GROUP BY oi.item_id, i.category " +
+                   "ON CONFLICT (day, item_id) DO UPDATE SET " +
+                   "units_sold = sales_daily_rollups.units_sold + EXCLUDED.units_sold, " +
+                   "revenue = sales_daily_rollups.revenue + EXCLUDED.revenue, " +
+                   "category = EXCLUDED.category",
+           nativeQuery = true)
+    int addOrder(@Param("orderId") Long orderId, @Param("day") LocalDate day);
+
+    // Only for orders already in the rollups; a cancelled order the backfill has not reached yet is counted by it
+    @Modifying
+    @Query(value = "INSERT INTO sales_daily_rollups (day, item_id, category, units_sold, revenue, units_cancelled, revenue_cancelled) " +
+                   "SELECT :day, oi.item_id, i.category, 0, 0, SUM(oi.quantity), SUM(oi.subtotal) " +
+                   "FROM order_items oi JOIN items i ON i.id = oi.item_id JOIN orders o ON o.id = oi.order_id " +
+                   "WHERE oi.order_id = :orderId AND o.sales_rolled_up " +
+                   "GROUP BY oi.item_id, i.category " +
+                   "ON CONFLICT (day, item_id) DO UPDATE SET " +
+                   "units_cancelled = sales_daily_rollups.units_cancelled + EXCLUDED.units_cancelled, " +
+                   "revenue_cancelled = sales_daily_rollups.revenue_cancelled + EXCLUDED.revenue_cancelled",
+           nativeQuery = true)
+    int cancelOrder(@Param("orderId") Long orderId, @Param("day") LocalDate day);
+
+    /**
+     * Fold every order the live path has not recorded into the rollups, and
+     * mark those orders so they are never counted twice. Totals are added to
+     * any rows live orders have already written for the same day and item.
+     * Concurrent runs are safe: the second one finds nothing left to mark.
+     */
+    @Modifying
+    @Query(value = "WITH picked AS (" +
+                   "  UPDATE orders SET sales_rolled_up = true WHERE sales_rolled_up IS NOT TRUE " +
+                   "  RETURNING id, created_at, status) " +
+                   "INSERT INTO sales_daily_rollups (day, item_id, category, units_sold, revenue, units_cancelled, revenue_cancelled) " +
+                   "SELECT CAST(p.created_at AS date), oi.item_id, MAX(i.category), SUM(oi.quantity), SUM(oi.subtotal), " +
+                   "SUM(CASE WHEN p.status = 'CANCELLED' THEN oi.quantity ELSE 0 END), " +
+                   "SUM(CASE WHEN p.status = 'CANCELLED' THEN oi.subtotal ELSE 0 END) " +
+                   "FROM picked p JOIN order_items oi ON oi.order_id = p.id JOIN items i ON i.id = oi.item_id " +
+                   "GROUP BY CAST(p.created_at AS date), oi.item_id " +
+                   "ON CONFLICT (day, item_id) DO UPDATE SET " +
+                   "units_sold = sales_daily_rollups.units_sold + EXCLUDED.units_sold, " +
+                   "revenue = sales_daily_rollups.revenue + EXCLUDED.revenue, " +
+                   "units_cancelled = sales_daily_rollups.units_cancelled + EXCLUDED.units_cancelled, " +
+                   "revenue_cancelled = sales_daily_rollups.revenue_cancelled + EXCLUDED.revenue_cancelled",
+           nativeQuery = true)
+    int backfill();
+}
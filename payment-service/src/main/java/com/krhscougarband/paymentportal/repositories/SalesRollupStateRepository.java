@@ -0,0 +1,18 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.SalesRollupState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface SalesRollupStateRepository extends JpaRepository<SalesRollupState, Integer> {
+
+    // Another instance may have finished the backfill first; its mark stands
+    @Modifying
+    @Query(value = "INSERT INTO sales_rollup_state (id, backfilled_at) VALUES (1, :now) ON CONFLICT (id) DO NOTHING",
+           nativeQuery = true)
+    int markBackfilled(@Param("now") LocalDateTime now);
+}
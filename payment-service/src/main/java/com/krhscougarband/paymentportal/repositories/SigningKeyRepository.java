@@ -0,0 +1,25 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.SigningKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SigningKeyRepository extends JpaRepository<SigningKey, String> {
+
+    List<SigningKey> findAllByOrderByCreatedAtDesc();
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SigningKey k SET k.retiredAt = :retiredAt WHERE k.retiredAt IS NULL AND k.kid <> :kid")
+    int retireAllExcept(String kid, LocalDateTime retiredAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SigningKey k WHERE k.retiredAt < :cutoff")
+    int deleteRetiredBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,63 @@
+package com.krhscougarband.paymentportal.repositories;
+
+import com.krhscougarband.paymentportal.entities.StockReservation;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface StockReservationRepository extends JpaRepository<StockReservation, UUID> {
+
+    // Row lock so a hold change and the expiry release of the same hold run one after the other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<StockReservation> findByUserEmailAndItemId(String userEmail, Long itemId);
+
+    List<StockReservation> findByUserEmailOrderByCreatedAt(String userEmail);
+
+    // Units the user holds on other items, for the per-user cap
+    @Query("SELECT COALESCE(SUM(r.quantity), 0) FROM StockReservation r " +
+           "WHERE r.userEmail = :userEmail AND r.itemId <> :itemId AND r.expiresAt > :now")
+    long sumLiveQuantityExcept(@Param("userEmail") String userEmail, @Param("itemId") Long itemId,
+                               @Param("now") LocalDateTime now);
+
+    /**
+     * Hand the user's live holds to checkout as (item_id, quantity) rows.
+     * Not @Modifying: RETURNING makes this a result query. Callers must be in a transaction.
+     */
+    @Query(value = "DELETE FROM stock_reservations WHERE user_email = :userEmail AND expires_at > :now " +
+                   "RETURNING item_id, quantity",
+           nativeQuery = true)
+    List<Object[]> takeLiveHolds(@Param("userEmail") String userEmail, @Param("now") LocalDateTime now);
+
+    /**
+     * Delete the given holds if they are still expired and give their stock back,
+     * in one statement. A hold extended in the meantime is left alone.
+     */
+    @Modifying
+    @Query(value = "WITH expired AS (" +
+                   "  DELETE FROM stock_reservations WHERE id IN (:ids) AND expires_at <= :now " +
+                   "  RETURNING item_id, quantity), " +
+                   "totals AS (SELECT item_id, SUM(quantity) AS quantity FROM expired GROUP BY item_id) " +
+                   "UPDATE items i SET stock_quantity = i.stock_quantity + t.quantity, updated_at = :now " +
+                   "FROM totals t WHERE i.id = t.item_id AND i.stock_quantity IS NOT NULL",
+           nativeQuery = true)
+    int releaseExpired(@Param("ids") List<UUID> ids, @Param("now") LocalDateTime now);
+
+    // Same as releaseExpired for every expired hold; catches holds whose timer lived on another instance
+    @Modifying
+    @Query(value = "WITH expired AS (" +
+                   "  DELETE FROM stock_reservations WHERE expires_at <= :now " +
+                   "  RETURNING item_id, quantity), " +
+                   "totals AS (SELECT item_id, SUM(quantity) AS quantity FROM expired GROUP BY item_id) " +
+                   "UPDATE items i SET stock_quantity = i.stock_quantity + t.quantity, updated_at = :now " +
+                   "FROM totals t WHERE i.id = t.item_id AND i.stock_quantity IS NOT NULL",
+           nativeQuery = true)
+    int releaseAllExpired(@Param("now") LocalDateTime now);
+}
@@ -2,6 +2,8 @@ package com.krhscougarband.paymentportal.repositories;
 
 import com.krhscougarband.paymentportal.entities.UserProfile;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -10,4 +12,7 @@ import java.util.Optional;
 public interface UserProfileRepository extends JpaRepository<UserProfile, Long> {
     Optional<UserProfile> findByUserEmail(String userEmail);
     Optional<UserProfile> findByUserId(String userId);
+
+    @Query("SELECT p.instrument FROM UserProfile p WHERE p.userEmail = :userEmail")
+    Optional<String> findInstrumentByUserEmail(@Param("userEmail") String userEmail);
 }
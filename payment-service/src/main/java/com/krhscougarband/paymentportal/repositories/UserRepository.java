@@ -3,7 +3,9 @@ package com.krhscougarband.paymentportal.repositories;
 import com.krhscougarband.paymentportal.entities.User;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -12,6 +14,8 @@ import java.util.List;
 public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByEmail(String email);
 
+    List<User> findByRole(String role);
+
     @EntityGraph(attributePaths = "students")
     @Query("SELECT u FROM User u WHERE u.email = :email")
     Optional<User> findByEmailWithStudents(String email);
@@ -23,4 +27,16 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     @EntityGraph(attributePaths = "students")
     @Query("SELECT u FROM User u")
     List<User> findAllWithStudents();
+
+    @Query("SELECT COALESCE(u.tokenGeneration, 0) FROM User u WHERE u.email = :email")
+    Optional<Integer> findTokenGenerationByEmail(String email);
+
+    // Users who have logged out everywhere at least once, as (email, generation) pairs
+    @Query("SELECT u.email, u.tokenGeneration FROM User u WHERE u.tokenGeneration > 0")
+    List<Object[]> findRaisedTokenGenerations();
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.tokenGeneration = COALESCE(u.tokenGeneration, 0) + 1 WHERE u.email = :email")
+    int incrementTokenGeneration(String email);
 }
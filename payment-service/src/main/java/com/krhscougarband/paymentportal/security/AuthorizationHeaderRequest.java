@@ -0,0 +1,75 @@
+package com.krhscougarband.paymentportal.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * Overrides the Authorization header without copying the request's headers.
+ * Header names are streamed from the wrapped request, with any existing
+ * Authorization entry skipped and ours appended at the end.
+ */
+class AuthorizationHeaderRequest extends HttpServletRequestWrapper {
+
+    private static final String AUTHORIZATION = "Authorization";
+
+    private final String authorization;
+
+    AuthorizationHeaderRequest(HttpServletRequest request, String authorization) {
+        super(request);
+        this.authorization = authorization;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return AUTHORIZATION.equalsIgnoreCase(name) ? authorization : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        return AUTHORIZATION.equalsIgnoreCase(name)
+                ? Collections.enumeration(Collections.singletonList(authorization))
+                : super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        Enumeration<String> names = super.getHeaderNames();
+        return new Enumeration<>() {
+            private String next = advance();
+            private boolean authorizationReturned;
+
+            private String advance() {
+                while (names.hasMoreElements()) {
+                    String name = names.nextElement();
+                    if (!AUTHORIZATION.equalsIgnoreCase(name)) {
+                        return name;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasMoreElements() {
+                return next != null || !authorizationReturned;
+            }
+
+            @Override
+            public String nextElement() {
+                if (next != null) {
+                    String current = next;
+                    next = advance();
+                    return current;
+                }
+                if (!authorizationReturned) {
+                    authorizationReturned = true;
+                    return AUTHORIZATION;
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+}
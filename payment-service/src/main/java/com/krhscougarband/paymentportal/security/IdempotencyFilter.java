@@ -0,0 +1,139 @@
+package com.krhscougarband.paymentportal.security;
+
+import com.krhscougarband.paymentportal.services.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Makes payment and refund POSTs safe to retry.
+ * When a request carries an Idempotency-Key, the first one runs and its
+ * response is stored; repeats within the TTL get the stored response back
+ * (marked with Idempotent-Replayed: true) instead of running again.
+ * Runs after Spring Security, so keys are scoped to the authenticated user.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    private static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final RouteClassifier routeClassifier;
+    private final IdempotencyService idempotencyService;
+    private final int maxBodyBytes;
+
+    public IdempotencyFilter(RouteClassifier routeClassifier, IdempotencyService idempotencyService,
+                             @Value("${idempotency.max-body-bytes:65536}") int maxBodyBytes) {
+        this.routeClassifier = routeClassifier;
+        this.idempotencyService = idempotencyService;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod())
+                || request.getHeader(HEADER) == null
+                || !RouteClassifier.Route.IDEMPOTENT_MUTATION.in(routeClassifier.classify(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String key = request.getHeader(HEADER);
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            writeError(response, 400, "Invalid Idempotency-Key header");
+            return;
+        }
+
+        CachedBodyRequest cachedRequest;
+        try {
+            cachedRequest = new CachedBodyRequest(request, maxBodyBytes);
+        } catch (CachedBodyRequest.TooLargeException e) {
+            writeError(response, 413, "Request body too large");
+            return;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String principal = auth != null ? auth.getName() : "anonymous";
+        String keyHash = sha256(principal + "\n" + key);
+        String requestHash = sha256(request.getMethod() + " " + request.getRequestURI() + "\n",
+                cachedRequest.body());
+
+        IdempotencyService.Lookup lookup = idempotencyService.begin(keyHash, requestHash);
+        switch (lookup.status()) {
+            case REPLAY -> {
+                IdempotencyService.StoredResponse stored = lookup.response();
+                response.setStatus(stored.statusCode());
+                if (stored.contentType() != null) {
+                    response.setContentType(stored.contentType());
+                }
+                response.setHeader("Idempotent-Replayed", "true");
+                if (stored.body() != null) {
+                    response.getOutputStream().write(stored.body().getBytes(StandardCharsets.UTF_8));
+                }
+                return;
+            }
+            case IN_PROGRESS -> {
+                response.setHeader("Retry-After", "1");
+                writeError(response, 409, "A request with this Idempotency-Key is still being processed");
+                return;
+            }
+            case MISMATCH -> {
+                writeError(response, 422, "Idempotency-Key was already used for a different request");
+                return;
+            }
+            case ACQUIRED -> {
+                // fall through and run the request
+            }
+        }
+
+        ContentCachingResponseWrapper cachedResponse = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(cachedRequest, cachedResponse);
+            // 5xx is our failure, not the client's, and 409/429 say "not now": let a retry run again
+            int status = cachedResponse.getStatus();
+            if (status < 500 && status != 409 && status != 429) {
+                idempotencyService.complete(keyHash, requestHash, status,
+                        cachedResponse.getContentType(),
+                        new String(cachedResponse.getContentAsByteArray(), StandardCharsets.UTF_8));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                idempotencyService.release(keyHash);
+            }
+            cachedResponse.copyBodyToResponse();
+        }
+    }
+
+    private static void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    private static String sha256(String prefix, byte... body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -20,11 +20,22 @@ public class JwtFilter extends OncePerRequestFilter {
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
     private final RevokedTokenRepository revokedTokenRepository;
+    private final TokenGenerationCache tokenGenerationCache;
+    private final RouteClassifier routeClassifier;
 
-    public JwtFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService, RevokedTokenRepository revokedTokenRepository) {
+    public JwtFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService, RevokedTokenRepository revokedTokenRepository,
+                     TokenGenerationCache tokenGenerationCache, RouteClassifier routeClassifier) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
         this.revokedTokenRepository = revokedTokenRepository;
+        this.tokenGenerationCache = tokenGenerationCache;
+        this.routeClassifier = routeClassifier;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Static assets are always public; skip token parsing and revocation lookups
+        return RouteClassifier.Route.STATIC_ASSET.in(routeClassifier.classify(request));
     }
 
     @Override
@@ -66,6 +77,12 @@ public class JwtFilter extends OncePerRequestFilter {
 
             if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                 try {
+                    // Tokens from before the user's last logout-all are dead
+                    if (jwtUtil.extractTokenGeneration(jwt) < tokenGenerationCache.currentGeneration(email)) {
+                        filterChain.doFilter(request, response);
+                        return;
+                    }
+
                     // Check if token is revoked
                     String tokenHash = jwtUtil.hashToken(jwt);
                     if (revokedTokenRepository.existsByTokenHash(tokenHash)) {
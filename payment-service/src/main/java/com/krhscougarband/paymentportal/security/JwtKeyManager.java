@@ -0,0 +1,213 @@
+package com.krhscougarband.paymentportal.security;
+
+import com.krhscougarband.paymentportal.entities.SigningKey;
+import com.krhscougarband.paymentportal.repositories.SigningKeyRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Owns the RSA keys used to sign JWTs.
+ * The newest key signs; older keys are marked retired when it takes over and
+ * stay published in the JWKS until every token they could have signed has
+ * expired. Keys live in the database, private halves encrypted, so all
+ * instances agree on the current kid; rotation runs under an advisory lock so
+ * only one instance creates the next key.
+ */
+@Component
+public class JwtKeyManager {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyManager.class);
+    private static final long LOCK_KEY = 0x4A57_544B_4559L; // "JWTKEY"
+
+    private final SigningKeyRepository signingKeyRepository;
+    private final SigningKeyCipher keyCipher;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${jwt.keys.rotation-interval-ms:2592000000}") // Default 30 days
+    private long rotationIntervalMs;
+
+    @Value("${jwt.expiration.remember:604800000}")
+    private long maxTokenLifetimeMs;
+
+    // Other instances pick up a new key on their next check, so a retired key may sign until then
+    @Value("${jwt.keys.check-interval-ms:3600000}")
+    private long checkIntervalMs;
+
+    @Value("${jwt.keys.reload-min-interval-ms:30000}")
+    private long reloadMinIntervalMs;
+
+    private volatile ActiveKey current;
+    private volatile Map<String, RSAPublicKey> publicKeys = Map.of();
+    private volatile long lastReload;
+
+    public JwtKeyManager(SigningKeyRepository signingKeyRepository, SigningKeyCipher keyCipher,
+                         JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.signingKeyRepository = signingKeyRepository;
+        this.keyCipher = keyCipher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        rotateIfDue();
+    }
+
+    /**
+     * Generate a new signing key when the current one is older than the rotation
+     * interval, retire the keys it replaces, and drop retired keys that can no
+     * longer have live tokens.
+     */
+    @Scheduled(fixedDelayString = "${jwt.keys.check-interval-ms:3600000}",
+               initialDelayString = "${jwt.keys.check-interval-ms:3600000}")
+    public synchronized void rotateIfDue() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")");
+            reload();
+            LocalDateTime now = LocalDateTime.now();
+            if (current == null || current.createdAt.isBefore(now.minus(Duration.ofMillis(rotationIntervalMs)))) {
+                createKey();
+                reload();
+                log.info("Rotated JWT signing key, active kid={}", current.kid);
+            }
+            encryptStoredKeys();
+            signingKeyRepository.retireAllExcept(current.kid, now);
+
+            // A key retired longer ago than the check interval plus the longest token lifetime has no live tokens left
+            LocalDateTime cutoff = now.minus(Duration.ofMillis(checkIntervalMs + maxTokenLifetimeMs));
+            if (signingKeyRepository.deleteRetiredBefore(cutoff) > 0) {
+                reload();
+            }
+        });
+    }
+
+    public String currentKid() {
+        return current.kid;
+    }
+
+    public PrivateKey currentPrivateKey() {
+        return current.privateKey;
+    }
+
+    /**
+     * Public key for a kid, reloading from the database (throttled) when the kid
+     * is unknown, e.g. after another instance rotated.
+     */
+    public RSAPublicKey publicKey(String kid) {
+        RSAPublicKey key = publicKeys.get(kid);
+        if (key == null && System.currentTimeMillis() - lastReload > reloadMinIntervalMs) {
+            reload();
+            key = publicKeys.get(kid);
+        }
+        return key;
+    }
+
+    /**
+     * RFC 7517 JSON Web Key Set with every key that may still verify a live token.
+     */
+    public Map<String, Object> jwks() {
+        List<Map<String, Object>> keys = new ArrayList<>();
+        for (Map.Entry<String, RSAPublicKey> entry : publicKeys.entrySet()) {
+            RSAPublicKey key = entry.getValue();
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("kid", entry.getKey());
+            jwk.put("use", "sig");
+            jwk.put("alg", "RS256");
+            jwk.put("n", base64Url(key.getModulus()));
+            jwk.put("e", base64Url(key.getPublicExponent()));
+            keys.add(jwk);
+        }
+        return Map.of("keys", keys);
+    }
+
+    private synchronized void reload() {
+        Map<String, RSAPublicKey> loaded = new LinkedHashMap<>();
+        ActiveKey newest = null;
+        try {
+            KeyFactory factory = KeyFactory.getInstance("RSA");
+            for (SigningKey stored : signingKeyRepository.findAllByOrderByCreatedAtDesc()) {
+                RSAPublicKey publicKey = (RSAPublicKey) factory.generatePublic(
+                        new X509EncodedKeySpec(Base64.getDecoder().decode(stored.getPublicKey())));
+                loaded.put(stored.getKid(), publicKey);
+                if (newest == null) {
+                    PrivateKey privateKey = factory.generatePrivate(
+                            new PKCS8EncodedKeySpec(keyCipher.decrypt(stored.getPrivateKey())));
+                    newest = new ActiveKey(stored.getKid(), privateKey, stored.getCreatedAt());
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to load JWT signing keys", e);
+        }
+        publicKeys = loaded;
+        if (newest != null) {
+            current = newest;
+        }
+        lastReload = System.currentTimeMillis();
+    }
+
+    private void createKey() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair pair = generator.generateKeyPair();
+
+            SigningKey key = new SigningKey();
+            key.setKid(UUID.randomUUID().toString());
+            key.setPublicKey(Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()));
+            key.setPrivateKey(keyCipher.encrypt(pair.getPrivate().getEncoded()));
+            key.setCreatedAt(LocalDateTime.now());
+            signingKeyRepository.save(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to generate JWT signing key", e);
+        }
+    }
+
+    // Rows written before private keys were encrypted are re-encrypted in place
+    private void encryptStoredKeys() {
+        for (SigningKey stored : signingKeyRepository.findAllByOrderByCreatedAtDesc()) {
+            if (!keyCipher.isEncrypted(stored.getPrivateKey())) {
+                stored.setPrivateKey(keyCipher.encrypt(keyCipher.decrypt(stored.getPrivateKey())));
+                signingKeyRepository.save(stored);
+            }
+        }
+    }
+
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        // Drop the sign byte BigInteger adds for values with the high bit set
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            bytes = trimmed;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private record ActiveKey(String kid, PrivateKey privateKey, LocalDateTime createdAt) {}
+}
@@ -1,8 +1,12 @@
 package com.krhscougarband.paymentportal.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -15,6 +19,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Component
@@ -32,8 +37,48 @@ public class JwtUtil {
     private static final String TOKEN_TYPE_CLAIM = "type";
     private static final String TOKEN_TYPE_ACCESS = "access";
     private static final String TOKEN_TYPE_REFRESH = "refresh";
+    private static final String TOKEN_GENERATION_CLAIM = "gen";
+
+    private static final String ROLES_CLAIM = "roles";
+    private static final String EMAIL_CLAIM = "email";
+    private static final String AUDIENCE_CLAIM = "aud";
+
+    @Value("${jwt.issuer:payment-service}")
+    private String issuer;
+
+    // Services allowed to accept access tokens; each checks that it is listed here
+    @Value("${jwt.audience:payment-service,kr-admin,admin-portal}")
+    private List<String> audience;
+
+    // Accept tokens signed with the old shared secret until they have all expired
+    @Value("${jwt.legacy-hmac.enabled:true}")
+    private boolean legacyHmacEnabled;
+
+    private final JwtKeyManager keyManager;
+
+    private final SigningKeyResolver keyResolver = new SigningKeyResolverAdapter() {
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            String kid = header.getKeyId();
+            if (kid == null) {
+                if (!legacyHmacEnabled) {
+                    throw new JwtException("Token has no key id");
+                }
+                return getLegacySigningKey();
+            }
+            Key key = keyManager.publicKey(kid);
+            if (key == null) {
+                throw new JwtException("Unknown signing key: " + kid);
+            }
+            return key;
+        }
+    };
 
-    private Key getSigningKey() {
+    public JwtUtil(JwtKeyManager keyManager) {
+        this.keyManager = keyManager;
+    }
+
+    private Key getLegacySigningKey() {
         return Keys.hmacShaKeyFor(secret.getBytes());
     }
 
@@ -44,30 +89,47 @@ public class JwtUtil {
 
     // Generate token with remember-me option
     public String generateToken(String email, boolean rememberMe) {
+        return generateToken(email, rememberMe, 0);
+    }
+
+    // Generate token bound to the user's current token generation (see TokenGenerationCache)
+    public String generateToken(String email, boolean rememberMe, int generation) {
+        return generateToken(email, rememberMe, generation, null);
+    }
+
+    // Role is embedded so other services can authorize from the token alone
+    public String generateToken(String email, boolean rememberMe, int generation, String role) {
         long expirationTime = rememberMe ? rememberMeExpiration : expiration;
         Map<String, Object> claims = new HashMap<>();
         claims.put(TOKEN_TYPE_CLAIM, TOKEN_TYPE_ACCESS);
-        
-        return Jwts.builder()
-                .setClaims(claims)
-                .setSubject(email)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + expirationTime))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
-                .compact();
+        claims.put(TOKEN_GENERATION_CLAIM, generation);
+        claims.put(EMAIL_CLAIM, email);
+        claims.put(ROLES_CLAIM, List.of(role != null ? role : "USER"));
+        claims.put(AUDIENCE_CLAIM, audience);
+        return buildToken(claims, email, expirationTime);
     }
 
     // Generate refresh token (valid for longer period)
     public String generateRefreshToken(String email) {
+        return generateRefreshToken(email, 0);
+    }
+
+    public String generateRefreshToken(String email, int generation) {
         Map<String, Object> claims = new HashMap<>();
         claims.put(TOKEN_TYPE_CLAIM, TOKEN_TYPE_REFRESH);
-        
+        claims.put(TOKEN_GENERATION_CLAIM, generation);
+        return buildToken(claims, email, rememberMeExpiration);
+    }
+
+    private String buildToken(Map<String, Object> claims, String subject, long expirationTime) {
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, keyManager.currentKid())
                 .setClaims(claims)
-                .setSubject(email)
+                .setSubject(subject)
+                .setIssuer(issuer)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + rememberMeExpiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .setExpiration(new Date(System.currentTimeMillis() + expirationTime))
+                .signWith(keyManager.currentPrivateKey(), SignatureAlgorithm.RS256)
                 .compact();
     }
 
@@ -84,6 +146,12 @@ public class JwtUtil {
         return expiration.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
     }
 
+    // Tokens issued before generations existed carry no claim and count as generation 0
+    public int extractTokenGeneration(String token) {
+        Integer generation = extractClaims(token).get(TOKEN_GENERATION_CLAIM, Integer.class);
+        return generation != null ? generation : 0;
+    }
+
     public boolean isRefreshToken(String token) {
         try {
             Claims claims = extractClaims(token);
@@ -117,7 +185,7 @@ public class JwtUtil {
 
     private Claims extractClaims(String token) {
         return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
+                .setSigningKeyResolver(keyResolver)
                 .build()
                 .parseClaimsJws(token)
                 .getBody();
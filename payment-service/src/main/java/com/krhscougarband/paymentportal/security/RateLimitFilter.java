@@ -19,6 +19,11 @@ public class RateLimitFilter extends OncePerRequestFilter {
     private static final long TIME_WINDOW = 60_000; // per minute
     
     private final Map<String, RateLimitData> requestCounts = new ConcurrentHashMap<>();
+    private final RouteClassifier routeClassifier;
+
+    public RateLimitFilter(RouteClassifier routeClassifier) {
+        this.routeClassifier = routeClassifier;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -27,7 +32,7 @@ public class RateLimitFilter extends OncePerRequestFilter {
         String path = request.getRequestURI();
         
         // Only rate limit auth endpoints
-        if (path.contains("/api/auth/login") || path.contains("/api/auth/register")) {
+        if (RouteClassifier.Route.CREDENTIAL_ENDPOINT.in(routeClassifier.classify(request))) {
             String clientIP = getClientIP(request);
             String key = clientIP + ":" + path;
 
@@ -0,0 +1,122 @@
+package com.krhscougarband.paymentportal.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precompiled path classifier shared by the security filters.
+ * Routes are stored in a segment trie built once at startup, so a request is
+ * classified with a single walk over its path. The result is cached on the
+ * request, so every filter after the first gets it for free.
+ * A "*" segment matches any single segment; literal segments win and the walk
+ * never backtracks, so avoid registering overlapping literal/wildcard routes.
+ */
+@Component
+public class RouteClassifier {
+
+    public enum Route {
+        STATIC_ASSET,        // css/js/favicon - never needs authentication
+        PUBLIC_PAGE,         // Thymeleaf shells; JS handles auth
+        AUTH_API,            // /api/auth/**
+        CREDENTIAL_ENDPOINT, // login/register - rate limited
+        IDEMPOTENT_MUTATION; // payment/refund POSTs that honour Idempotency-Key
+
+        private final int bit = 1 << ordinal();
+
+        public boolean in(int mask) {
+            return (mask & bit) != 0;
+        }
+    }
+
+    private static final String ATTRIBUTE = RouteClassifier.class.getName() + ".mask";
+
+    private final Node root = new Node();
+
+    public RouteClassifier() {
+        register("/css/**", Route.STATIC_ASSET);
+        register("/js/**", Route.STATIC_ASSET);
+        register("/static/**", Route.STATIC_ASSET);
+        register("/favicon.svg", Route.STATIC_ASSET);
+
+        register("/", Route.PUBLIC_PAGE);
+        register("/shop", Route.PUBLIC_PAGE);
+        register("/cart", Route.PUBLIC_PAGE);
+        register("/orders", Route.PUBLIC_PAGE);
+        register("/profile", Route.PUBLIC_PAGE);
+
+        register("/api/auth/**", Route.AUTH_API);
+        register("/api/auth/login", Route.CREDENTIAL_ENDPOINT);
+        register("/api/auth/register", Route.CREDENTIAL_ENDPOINT);
+
+        register("/api/payments/plan/*", Route.IDEMPOTENT_MUTATION);
+        register("/api/payments/admin/plan/*/cash", Route.IDEMPOTENT_MUTATION);
+        register("/api/admin/plans/*/refund", Route.IDEMPOTENT_MUTATION);
+    }
+
+    /**
+     * Bitmask of every Route the request path falls under; test with {@link Route#in(int)}.
+     */
+    public int classify(HttpServletRequest request) {
+        Object cached = request.getAttribute(ATTRIBUTE);
+        if (cached instanceof Integer mask) {
+            return mask;
+        }
+        String uri = request.getRequestURI();
+        int mask = classify(uri, request.getContextPath().length());
+        request.setAttribute(ATTRIBUTE, mask);
+        return mask;
+    }
+
+    int classify(String uri, int start) {
+        Node node = root;
+        int mask = node.subtreeMask;
+        int pos = start;
+        int end = uri.length();
+        if (pos < end && uri.charAt(pos) == '/') {
+            pos++;
+        }
+        while (pos < end) {
+            int slash = uri.indexOf('/', pos);
+            int segmentEnd = slash < 0 ? end : slash;
+            Node next = node.children.get(uri.substring(pos, segmentEnd));
+            node = next != null ? next : node.wildcard;
+            if (node == null) {
+                return mask;
+            }
+            mask |= node.subtreeMask;
+            pos = segmentEnd + 1;
+        }
+        return mask | node.exactMask;
+    }
+
+    private void register(String pattern, Route route) {
+        boolean subtree = pattern.endsWith("/**");
+        String path = subtree ? pattern.substring(0, pattern.length() - 3) : pattern;
+        Node node = root;
+        for (String segment : path.split("/")) {
+            if (segment.equals("*")) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else if (!segment.isEmpty()) {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        if (subtree) {
+            node.subtreeMask |= route.bit;
+        } else {
+            node.exactMask |= route.bit;
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        Node wildcard;
+        int exactMask;
+        int subtreeMask;
+    }
+}
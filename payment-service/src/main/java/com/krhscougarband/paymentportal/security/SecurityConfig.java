@@ -1,5 +1,6 @@
 package com.krhscougarband.paymentportal.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -25,10 +26,16 @@ public class SecurityConfig {
         http
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
+                // The request was authorized before going async (SSE); the stateless context is gone by the async dispatch
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers("/actuator/health").permitAll()
+                // metrics and info expose pool, JVM and request details; admins only
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
+                .requestMatchers("/.well-known/jwks.json").permitAll()
                 .requestMatchers("/api/auth/login").permitAll()
                 .requestMatchers("/api/auth/register").permitAll()
                 .requestMatchers("/api/auth/refresh").permitAll()
+                .requestMatchers("/api/auth/revocations").permitAll()
                 .requestMatchers("/api/auth/logout").authenticated()
                 .requestMatchers("/api/auth/logout-all").authenticated()
                 .requestMatchers("/").permitAll()
@@ -38,6 +45,8 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                 // View templates are public - JS handles auth validation
                 .requestMatchers("/dashboard", "/shop", "/cart", "/orders", "/profile", "/admin", "/user-plans", "/admin-plans", "/settings").permitAll()
+                // Refund approval links from email; the signed one-time token is the credential
+                .requestMatchers("/refunds/decision").permitAll()
                 .requestMatchers("/api/auth/me").authenticated()
                 .requestMatchers("/api/admin/**").authenticated()
                 .requestMatchers("/api/**").authenticated()
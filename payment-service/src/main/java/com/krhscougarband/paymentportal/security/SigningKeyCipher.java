@@ -0,0 +1,81 @@
+package com.krhscougarband.paymentportal.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts JWT private keys before they are written to jwt_signing_keys.
+ * AES-256-GCM under jwt.keys.encryption-secret; without one the key is
+ * derived from jwt.secret under a fixed purpose label, as ApprovalTokenSigner
+ * does. Encrypted values carry a version prefix so rows written before
+ * encryption (plain Base64 PKCS#8) can still be read and re-encrypted.
+ */
+@Component
+public class SigningKeyCipher {
+
+    private static final String PREFIX = "v1:";
+    private static final String KEY_PURPOSE = "jwt-signing-key-encryption/v1";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    public SigningKeyCipher(@Value("${jwt.keys.encryption-secret:}") String secret,
+                            @Value("${jwt.secret}") String jwtSecret) {
+        String master = secret != null && !secret.isBlank() ? secret : jwtSecret;
+        this.key = new SecretKeySpec(derive(master), "AES");
+    }
+
+    private static byte[] derive(String masterSecret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(masterSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal(KEY_PURPOSE.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to derive signing key encryption key", e);
+        }
+    }
+
+    public boolean isEncrypted(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    public String encrypt(byte[] plain) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] sealed = cipher.doFinal(plain);
+            return PREFIX + Base64.getEncoder().encodeToString(
+                    ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to encrypt signing key", e);
+        }
+    }
+
+    public byte[] decrypt(String stored) {
+        if (!isEncrypted(stored)) {
+            return Base64.getDecoder().decode(stored);
+        }
+        try {
+            byte[] data = Base64.getDecoder().decode(stored.substring(PREFIX.length()));
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, data, 0, IV_LENGTH));
+            return cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to decrypt signing key; check jwt.keys.encryption-secret", e);
+        }
+    }
+}
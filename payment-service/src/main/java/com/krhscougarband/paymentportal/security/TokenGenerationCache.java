@@ -0,0 +1,61 @@
+package com.krhscougarband.paymentportal.security;
+
+import com.krhscougarband.paymentportal.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory view of each user's token generation. JWTs carry the generation
+ * they were issued under; anything older than the cached value is treated as
+ * revoked. Entries expire a short TTL after they were loaded, so a bump made
+ * by another instance is picked up without a shared cache, and the cache
+ * keeps at most jwt.generation.cache-max-entries users, dropping the least
+ * recently used.
+ */
+@Component
+public class TokenGenerationCache {
+
+    private final UserRepository userRepository;
+    private final Map<String, Entry> generations;
+
+    @Value("${jwt.generation.cache-ttl-ms:60000}")
+    private long ttlMillis;
+
+    public TokenGenerationCache(UserRepository userRepository,
+                                @Value("${jwt.generation.cache-max-entries:10000}") int maxEntries) {
+        this.userRepository = userRepository;
+        this.generations = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public int currentGeneration(String email) {
+        long now = System.currentTimeMillis();
+        Entry entry = generations.get(email);
+        if (entry == null || now - entry.loadedAt > ttlMillis) {
+            int generation = userRepository.findTokenGenerationByEmail(email).orElse(0);
+            entry = new Entry(generation, now);
+            generations.put(email, entry);
+        }
+        return entry.generation;
+    }
+
+    /**
+     * Invalidate every token issued to the user so far.
+     * Returns the new generation to embed in freshly issued tokens.
+     */
+    public int bump(String email) {
+        userRepository.incrementTokenGeneration(email);
+        generations.remove(email);
+        return currentGeneration(email);
+    }
+
+    private record Entry(int generation, long loadedAt) {}
+}
@@ -1,28 +1,218 @@
 package com.krhscougarband.paymentportal.services;
 
-import com.krhscougarband.paymentportal.entities.PaymentLog;
 import com.krhscougarband.paymentportal.entities.Plan;
-import com.krhscougarband.paymentportal.repositories.PaymentLogRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Audit trail writer.
+ * Events are staged in audit_outbox with one batched insert when the caller's
+ * transaction commits, so an event exists exactly when the change it describes
+ * does. After commit their ids go on an in-process queue and a background
+ * thread moves them to audit_events in batches. Anything the queue misses
+ * (overflow, restart) is swept up from the outbox on a schedule.
+ */
 @Service
 public class AuditService {
 
-    private final PaymentLogRepository paymentLogRepository;
+    private static final Logger log = LoggerFactory.getLogger(AuditService.class);
 
-    public AuditService(PaymentLogRepository paymentLogRepository) {
-        this.paymentLogRepository = paymentLogRepository;
+    private static final String COLUMNS = "id, event_type, plan_id, actor, amount, status, transaction_id, created_at";
+
+    private static final String INSERT_OUTBOX =
+            "INSERT INTO audit_outbox (" + COLUMNS + ") " +
+            "VALUES (:id, :eventType, :planId, :actor, :amount, :status, :transactionId, :createdAt)";
+
+    // Delete-and-insert in one statement: a row is moved exactly once even if the sweeper races the writer
+    private static final String MOVE_BY_ID =
+            "WITH moved AS (DELETE FROM audit_outbox WHERE id IN (:ids) RETURNING " + COLUMNS + ") " +
+            "INSERT INTO audit_events (" + COLUMNS + ") SELECT " + COLUMNS + " FROM moved";
+
+    private static final String MOVE_STALE =
+            "WITH moved AS (DELETE FROM audit_outbox WHERE id IN (" +
+            "  SELECT id FROM audit_outbox WHERE created_at < :cutoff ORDER BY created_at LIMIT :limit " +
+            "  FOR UPDATE SKIP LOCKED) RETURNING " + COLUMNS + ") " +
+            "INSERT INTO audit_events (" + COLUMNS + ") SELECT " + COLUMNS + " FROM moved";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final BlockingQueue<UUID> queue;
+    private final Counter writtenCounter;
+    private final int batchSize;
+    private final long maxDelayMs;
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditService(NamedParameterJdbcTemplate jdbcTemplate,
+                        MeterRegistry meterRegistry,
+                        @Value("${audit.queue-capacity:10000}") int queueCapacity,
+                        @Value("${audit.batch-size:200}") int batchSize,
+                        @Value("${audit.max-delay-ms:500}") long maxDelayMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.writtenCounter = Counter.builder("audit.events.written")
+                .description("Audit events moved from the outbox to audit_events")
+                .register(meterRegistry);
+        Gauge.builder("audit.queue.depth", queue, BlockingQueue::size)
+                .description("Committed audit events waiting for the background writer")
+                .register(meterRegistry);
     }
 
     public void logPayment(Plan plan, BigDecimal amount, String status, String transactionId) {
-        PaymentLog log = new PaymentLog();
-        log.setPlan(plan);
-        log.setAmount(amount);
-        log.setStatus(status);
-        log.setTransactionId(transactionId);
+        record("PAYMENT", plan.getId(), amount, status, transactionId);
+    }
+
+    /**
+     * Stage an audit event. Inside a transaction it is written only if that
+     * transaction commits; outside one it is written immediately.
+     */
+    @SuppressWarnings("unchecked")
+    public void record(String eventType, UUID planId, BigDecimal amount, String status, String transactionId) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        MapSqlParameterSource event = new MapSqlParameterSource()
+                .addValue("id", UUID.randomUUID())
+                .addValue("eventType", eventType)
+                .addValue("planId", planId)
+                .addValue("actor", auth != null ? auth.getName() : "system")
+                .addValue("amount", amount)
+                .addValue("status", status)
+                .addValue("transactionId", transactionId)
+                .addValue("createdAt", LocalDateTime.now());
+
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<MapSqlParameterSource> single = List.of(event);
+            writeOutbox(single);
+            enqueue(single);
+            return;
+        }
+
+        List<MapSqlParameterSource> pending = (List<MapSqlParameterSource>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<MapSqlParameterSource> staged = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, staged);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                // A REQUIRES_NEW transaction suspends this one; its events must start their own batch
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(AuditService.this);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(AuditService.this, staged);
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    writeOutbox(staged);
+                }
+
+                @Override
+                public void afterCommit() {
+                    enqueue(staged);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(AuditService.this);
+                }
+            });
+            pending = staged;
+        }
+        pending.add(event);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::runWriter, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Anything still queued is already in the outbox and is swept up on the next start
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Recover outbox rows the writer never saw.
+     */
+    @Scheduled(fixedDelayString = "${audit.sweep.interval-ms:60000}",
+               initialDelayString = "${audit.sweep.interval-ms:60000}")
+    public void sweepOutbox() {
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(maxDelayMs * 10));
+        int moved;
+        do {
+            moved = jdbcTemplate.update(MOVE_STALE, Map.of("cutoff", cutoff, "limit", batchSize));
+            writtenCounter.increment(moved);
+        } while (moved == batchSize);
+    }
+
+    private void writeOutbox(List<MapSqlParameterSource> events) {
+        if (!events.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_OUTBOX, events.toArray(SqlParameterSource[]::new));
+        }
+    }
+
+    private void enqueue(List<MapSqlParameterSource> events) {
+        for (MapSqlParameterSource event : events) {
+            if (!queue.offer((UUID) event.getValue("id"))) {
+                return; // full: the sweeper will move the rest
+            }
+        }
+    }
 
-        paymentLogRepository.save(log);
+    private void runWriter() {
+        List<UUID> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                UUID first = queue.poll(maxDelayMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writtenCounter.increment(jdbcTemplate.update(MOVE_BY_ID, Map.of("ids", batch)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // Rows stay in the outbox; the sweeper retries them
+                log.warn("Audit batch of {} events failed: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
     }
 }
@@ -0,0 +1,68 @@
+package com.krhscougarband.paymentportal.services;
+
+import com.krhscougarband.paymentportal.billing.BillingEngine;
+import com.krhscougarband.paymentportal.repositories.PlanRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Finds plans whose next_charge_at has passed and bills them.
+ * Due plans are leased in bounded pages with FOR UPDATE SKIP LOCKED, so any
+ * number of instances can run this at once without double-charging and the
+ * cost of a run tracks the number of due plans, not the size of the table.
+ * Each page is charged by the BillingEngine; a plan whose charge hits a
+ * transient error keeps its lease until it expires and is retried later.
+ */
+@Service
+public class DuePlanScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(DuePlanScheduler.class);
+
+    private final PlanRepository planRepository;
+    private final BillingEngine billingEngine;
+
+    @Value("${billing.scheduler.enabled:false}")
+    private boolean enabled;
+
+    @Value("${billing.scheduler.page-size:100}")
+    private int pageSize;
+
+    @Value("${billing.scheduler.max-pages-per-run:50}")
+    private int maxPagesPerRun;
+
+    @Value("${billing.scheduler.lease-ms:600000}")
+    private long leaseMs;
+
+    public DuePlanScheduler(PlanRepository planRepository, BillingEngine billingEngine) {
+        this.planRepository = planRepository;
+        this.billingEngine = billingEngine;
+    }
+
+    @Scheduled(fixedDelayString = "${billing.scheduler.interval-ms:60000}",
+               initialDelayString = "${billing.scheduler.initial-delay-ms:60000}")
+    public void runDuePlans() {
+        if (!enabled) {
+            return;
+        }
+        for (int page = 0; page < maxPagesPerRun; page++) {
+            LocalDateTime now = LocalDateTime.now();
+            List<UUID> claimed = planRepository.claimDuePlans(now, now.plus(Duration.ofMillis(leaseMs)), pageSize);
+            if (claimed.isEmpty()) {
+                return;
+            }
+            billingEngine.bill(planRepository.findAllById(claimed));
+            if (claimed.size() < pageSize) {
+                return;
+            }
+        }
+        log.info("Billing run stopped after {} pages; remaining due plans are picked up next run", maxPagesPerRun);
+    }
+}
@@ -0,0 +1,153 @@
+package com.krhscougarband.paymentportal.services;
+
+import com.krhscougarband.paymentportal.entities.IdempotencyRecord;
+import com.krhscougarband.paymentportal.repositories.IdempotencyRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers responses by Idempotency-Key.
+ * The database row is the source of truth and doubles as the lock that stops
+ * two copies of the same request running at once; completed responses are
+ * also kept in a small in-process LRU so hot retries skip the database.
+ * A claim only holds the key for a short lease, so a request whose instance
+ * died can be retried soon after; the full TTL starts once the response is stored.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public enum Status { ACQUIRED, IN_PROGRESS, REPLAY, MISMATCH }
+
+    public record StoredResponse(String requestHash, int statusCode, String contentType, String body,
+                                 LocalDateTime expiresAt) {}
+
+    public record Lookup(Status status, StoredResponse response) {}
+
+    private final IdempotencyRecordRepository repository;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Map<String, StoredResponse> recent;
+    private final ReentrantLock recentLock = new ReentrantLock();
+
+    @Value("${idempotency.cleanup.batch-size:500}")
+    private int cleanupBatchSize;
+
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              @Value("${idempotency.ttl-ms:86400000}") long ttlMs,
+                              @Value("${idempotency.lease-ms:120000}") long leaseMs,
+                              @Value("${idempotency.cache-size:1000}") int cacheSize) {
+        this.repository = repository;
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.lease = Duration.ofMillis(leaseMs);
+        this.recent = new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Either claim the key for this request or report what the earlier request left behind.
+     */
+    public Lookup begin(String keyHash, String requestHash) {
+        StoredResponse cached = cached(keyHash);
+        if (cached != null) {
+            return match(cached, requestHash);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (repository.reserve(keyHash, requestHash, now, now.plus(lease)) == 1) {
+            return new Lookup(Status.ACQUIRED, null);
+        }
+
+        IdempotencyRecord existing = repository.findById(keyHash).orElse(null);
+        if (existing == null || existing.getExpiresAt().isBefore(now)) {
+            // Expired (or an abandoned claim past its lease) but not yet cleaned up: take it over
+            if (existing != null) {
+                repository.delete(existing);
+            }
+            return repository.reserve(keyHash, requestHash, now, now.plus(lease)) == 1
+                    ? new Lookup(Status.ACQUIRED, null)
+                    : new Lookup(Status.IN_PROGRESS, null);
+        }
+        if (!existing.getRequestHash().equals(requestHash)) {
+            return new Lookup(Status.MISMATCH, null);
+        }
+        if (!existing.isCompleted()) {
+            return new Lookup(Status.IN_PROGRESS, null);
+        }
+        StoredResponse stored = new StoredResponse(existing.getRequestHash(), existing.getStatusCode(),
+                existing.getContentType(), existing.getResponseBody(), existing.getExpiresAt());
+        remember(keyHash, stored);
+        return new Lookup(Status.REPLAY, stored);
+    }
+
+    public void complete(String keyHash, String requestHash, int statusCode, String contentType, String body) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        repository.complete(keyHash, statusCode, contentType, body, expiresAt);
+        remember(keyHash, new StoredResponse(requestHash, statusCode, contentType, body, expiresAt));
+    }
+
+    /**
+     * Drop an unfinished claim so the client can retry (used when the request failed server-side).
+     */
+    public void release(String keyHash) {
+        repository.release(keyHash);
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup.interval-ms:900000}",
+               initialDelayString = "${idempotency.cleanup.interval-ms:900000}")
+    public void deleteExpired() {
+        LocalDateTime cutoff = LocalDateTime.now();
+        long deleted = 0;
+        int removed;
+        do {
+            removed = repository.deleteExpiredBatch(cutoff, cleanupBatchSize);
+            deleted += removed;
+        } while (removed == cleanupBatchSize);
+        if (deleted > 0) {
+            log.info("Removed {} expired idempotency keys", deleted);
+        }
+    }
+
+    private Lookup match(StoredResponse stored, String requestHash) {
+        return stored.requestHash().equals(requestHash)
+                ? new Lookup(Status.REPLAY, stored)
+                : new Lookup(Status.MISMATCH, null);
+    }
+
+    private StoredResponse cached(String keyHash) {
+        recentLock.lock();
+        try {
+            StoredResponse stored = recent.get(keyHash);
+            if (stored != null && stored.expiresAt().isBefore(LocalDateTime.now())) {
+                recent.remove(keyHash);
+                return null;
+            }
+            return stored;
+        } finally {
+            recentLock.unlock();
+        }
+    }
+
+    private void remember(String keyHash, StoredResponse response) {
+        recentLock.lock();
+        try {
+            recent.put(keyHash, response);
+        } finally {
+            recentLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.krhscougarband.paymentportal.services;
+
+import com.krhscougarband.paymentportal.dto.InstrumentRuleRow;
+import com.krhscougarband.paymentportal.repositories.InstrumentItemRuleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of instrument_item_rules keyed by normalized instrument, so
+ * checkout expands a student's instrument kit with a hash lookup instead of
+ * a case-insensitive query. The whole map is rebuilt and swapped in one step
+ * whenever rules or items are written through this instance, and on a timer
+ * to pick up writes made elsewhere.
+ */
+@Service
+public class InstrumentRuleCache {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentRuleCache.class);
+
+    private final InstrumentItemRuleRepository instrumentItemRuleRepository;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Map<String, List<InstrumentRuleRow>> rulesByInstrument;
+
+    public InstrumentRuleCache(InstrumentItemRuleRepository instrumentItemRuleRepository) {
+        this.instrumentItemRuleRepository = instrumentItemRuleRepository;
+    }
+
+    public List<InstrumentRuleRow> rulesFor(String instrument) {
+        if (instrument == null || instrument.isBlank()) {
+            return List.of();
+        }
+        Map<String, List<InstrumentRuleRow>> snapshot = rulesByInstrument;
+        if (snapshot == null) {
+            snapshot = load();
+        }
+        return snapshot.getOrDefault(normalize(instrument), List.of());
+    }
+
+    /**
+     * Reload every rule. Call after a rule or item write has committed. A
+     * reload that started before a newer one is discarded, so a slow refresh
+     * can never put older data back.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${instrument-rules.refresh-interval-ms:300000}",
+               initialDelayString = "${instrument-rules.refresh-interval-ms:300000}")
+    public void refresh() {
+        load();
+    }
+
+    private Map<String, List<InstrumentRuleRow>> load() {
+        long started = generation.incrementAndGet();
+        Map<String, List<InstrumentRuleRow>> loaded = new HashMap<>();
+        for (InstrumentRuleRow row : instrumentItemRuleRepository.findAllRows()) {
+            loaded.computeIfAbsent(normalize(row.instrument()), k -> new ArrayList<>()).add(row);
+        }
+        loaded.replaceAll((k, rows) -> List.copyOf(rows));
+        Map<String, List<InstrumentRuleRow>> snapshot = Map.copyOf(loaded);
+        synchronized (this) {
+            if (generation.get() == started || rulesByInstrument == null) {
+                rulesByInstrument = snapshot;
+            }
+        }
+        log.debug("Loaded instrument rules for {} instruments", snapshot.size());
+        return snapshot;
+    }
+
+    private static String normalize(String instrument) {
+        return instrument.trim().toLowerCase(Locale.ROOT);
+    }
+}
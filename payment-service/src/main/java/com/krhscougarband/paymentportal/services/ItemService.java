@@ -1,26 +1,72 @@
 package com.krhscougarband.paymentportal.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.krhscougarband.paymentportal.dto.CatalogItemDto;
+import com.krhscougarband.paymentportal.dto.ItemStockDto;
 import com.krhscougarband.paymentportal.entities.Item;
 import com.krhscougarband.paymentportal.repositories.ItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Shop catalog. The available-item listings are served from an in-memory
+ * snapshot holding each listing already serialized, with a strong ETag over
+ * its bytes, so shop page loads run no queries and unchanged pages revalidate
+ * to a 304. The snapshot is rebuilt and swapped in whole after every item
+ * write through this service, and on a timer to pick up writes made
+ * elsewhere. Stock is deliberately left out of the snapshot: checkout and
+ * cart holds change it constantly, so it is read live by getAvailableStock.
+ */
 @Service
 public class ItemService {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemService.class);
+
+    public record CatalogView(String etag, byte[] json) {}
+
+    private record Catalog(CatalogView available, Map<String, CatalogView> byCategory) {}
+
     private final ItemRepository itemRepository;
+    private final InstrumentRuleCache instrumentRuleCache;
+    private final ObjectMapper objectMapper;
+    private final CatalogView emptyView;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Catalog catalog;
 
-    public ItemService(ItemRepository itemRepository) {
+    public ItemService(ItemRepository itemRepository, InstrumentRuleCache instrumentRuleCache,
+                       ObjectMapper objectMapper) {
         this.itemRepository = itemRepository;
+        this.instrumentRuleCache = instrumentRuleCache;
+        this.objectMapper = objectMapper;
+        this.emptyView = view(List.of());
     }
 
-    public List<Item> getAvailableItems() {
-        return itemRepository.findByAvailableTrue();
+    public CatalogView getAvailableCatalog() {
+        return currentCatalog().available();
     }
 
-    public List<Item> getItemsByCategory(String category) {
-        return itemRepository.findByCategoryAndAvailableTrue(category);
+    public CatalogView getCategoryCatalog(String category) {
+        return currentCatalog().byCategory().getOrDefault(category, emptyView);
+    }
+
+    public List<ItemStockDto> getAvailableStock() {
+        return itemRepository.findAvailableStock();
     }
 
     public Optional<Item> getItemById(Long id) {
@@ -28,14 +74,70 @@ public class ItemService {
     }
 
     public Item createItem(Item item) {
-        return itemRepository.save(item);
+        Item saved = itemRepository.save(item);
+        catalogChanged();
+        return saved;
     }
 
     public Item updateItem(Item item) {
-        return itemRepository.save(item);
+        Item saved = itemRepository.save(item);
+        catalogChanged();
+        return saved;
     }
 
     public void deleteItem(Long id) {
         itemRepository.deleteById(id);
+        catalogChanged();
+    }
+
+    /**
+     * Rebuild the catalog snapshot. A rebuild that started before a newer one
+     * is discarded, so a slow rebuild can never put older data back.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${catalog.refresh-interval-ms:60000}",
+               initialDelayString = "${catalog.refresh-interval-ms:60000}")
+    public void refreshCatalog() {
+        load();
+    }
+
+    private void catalogChanged() {
+        load();
+        instrumentRuleCache.refresh();
+    }
+
+    private Catalog currentCatalog() {
+        Catalog current = catalog;
+        return current != null ? current : load();
+    }
+
+    private Catalog load() {
+        long started = generation.incrementAndGet();
+        List<Item> items = itemRepository.findByAvailableTrue();
+        Map<String, List<Item>> grouped = new LinkedHashMap<>();
+        for (Item item : items) {
+            grouped.computeIfAbsent(item.getCategory(), k -> new ArrayList<>()).add(item);
+        }
+        Map<String, CatalogView> byCategory = new HashMap<>();
+        grouped.forEach((category, categoryItems) -> byCategory.put(category, view(categoryItems)));
+        Catalog loaded = new Catalog(view(items), Map.copyOf(byCategory));
+        synchronized (this) {
+            if (generation.get() == started || catalog == null) {
+                catalog = loaded;
+            }
+        }
+        log.debug("Rebuilt shop catalog: {} items in {} categories", items.size(), byCategory.size());
+        return loaded;
+    }
+
+    private CatalogView view(List<Item> items) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(items.stream().map(CatalogItemDto::from).toList());
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            String etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+            return new CatalogView(etag, json);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not serialize the shop catalog", e);
+        }
     }
 }
@@ -0,0 +1,185 @@
+package com.krhscougarband.paymentportal.services;
+
+import com.krhscougarband.paymentportal.entities.MailMessage;
+import com.krhscougarband.paymentportal.repositories.MailMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers queued mail_outbox messages.
+ * Due messages are leased in batches with SKIP LOCKED, sent over one SMTP
+ * connection per chunk, and throttled to mail.dispatch.max-per-second so a
+ * burst of notifications cannot trip the relay's rate limits. A failed
+ * message is retried with exponential backoff until max-attempts, then left
+ * as FAILED. With no spring.mail.host configured nothing is sent and messages
+ * wait in the outbox; point it at a local SMTP catcher (e.g. Mailpit on
+ * port 1025) to see them in development.
+ */
+@Service
+public class MailDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(6);
+
+    private final MailMessageRepository mailMessageRepository;
+    private final ObjectProvider<JavaMailSender> mailSenderProvider;
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+
+    @Value("${spring.mail.host:}")
+    private String mailHost;
+
+    @Value("${spring.mail.from:}")
+    private String from;
+
+    @Value("${mail.dispatch.batch-size:50}")
+    private int batchSize;
+
+    @Value("${mail.dispatch.max-per-second:5}")
+    private int maxPerSecond;
+
+    @Value("${mail.dispatch.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${mail.dispatch.backoff-ms:60000}")
+    private long backoffMs;
+
+    @Value("${mail.dispatch.lease-ms:300000}")
+    private long leaseMs;
+
+    public MailDispatcher(MailMessageRepository mailMessageRepository,
+                          ObjectProvider<JavaMailSender> mailSenderProvider,
+                          MeterRegistry meterRegistry) {
+        this.mailMessageRepository = mailMessageRepository;
+        this.mailSenderProvider = mailSenderProvider;
+        this.sentCounter = Counter.builder("mail.messages.sent")
+                .description("Outbox emails delivered to the SMTP relay")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("mail.messages.failed")
+                .description("Outbox email delivery attempts that failed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (mailHost == null || mailHost.isBlank()) {
+            log.warn("spring.mail.host is not set; emails will be queued in mail_outbox but not sent");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${mail.dispatch.interval-ms:5000}",
+               initialDelayString = "${mail.dispatch.interval-ms:5000}")
+    public void dispatch() {
+        JavaMailSender sender = mailSenderProvider.getIfAvailable();
+        if (sender == null || mailHost == null || mailHost.isBlank()) {
+            return;
+        }
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            List<UUID> claimed = mailMessageRepository.claimDue(now, now.plus(Duration.ofMillis(leaseMs)), batchSize);
+            if (claimed.isEmpty()) {
+                return;
+            }
+            List<MailMessage> messages = mailMessageRepository.findAllById(claimed);
+            int chunkSize = Math.max(1, maxPerSecond);
+            for (int i = 0; i < messages.size(); i += chunkSize) {
+                long started = System.nanoTime();
+                send(sender, messages.subList(i, Math.min(i + chunkSize, messages.size())));
+                if (i + chunkSize < messages.size()) {
+                    throttle(started);
+                }
+            }
+            if (claimed.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void send(JavaMailSender sender, List<MailMessage> chunk) {
+        Map<SimpleMailMessage, MailMessage> byMail = new IdentityHashMap<>();
+        for (MailMessage message : chunk) {
+            SimpleMailMessage mail = new SimpleMailMessage();
+            if (from != null && !from.isBlank()) {
+                mail.setFrom(from);
+            }
+            mail.setTo(message.getRecipient());
+            mail.setSubject(message.getSubject());
+            mail.setText(message.getBody());
+            byMail.put(mail, message);
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        try {
+            sender.send(byMail.keySet().toArray(new SimpleMailMessage[0]));
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+            if (failures.isEmpty()) {
+                failures = everyMessage(byMail, e);
+            }
+        } catch (MailException e) {
+            // Connection or authentication problem: nothing in the chunk went out
+            failures = everyMessage(byMail, e);
+        }
+
+        List<UUID> sent = new ArrayList<>();
+        for (Map.Entry<SimpleMailMessage, MailMessage> entry : byMail.entrySet()) {
+            Exception failure = failures.get(entry.getKey());
+            if (failure == null) {
+                sent.add(entry.getValue().getId());
+            } else {
+                retryLater(entry.getValue(), failure);
+            }
+        }
+        if (!sent.isEmpty()) {
+            mailMessageRepository.markSent(sent, LocalDateTime.now());
+            sentCounter.increment(sent.size());
+        }
+    }
+
+    private void retryLater(MailMessage message, Exception failure) {
+        long delay = Math.min(backoffMs << Math.min(message.getAttempts(), 20), MAX_BACKOFF.toMillis());
+        String error = failure.getMessage() != null && failure.getMessage().length() > 1000
+                ? failure.getMessage().substring(0, 1000) : failure.getMessage();
+        mailMessageRepository.markFailed(message.getId(), error,
+                LocalDateTime.now().plus(Duration.ofMillis(delay)), maxAttempts);
+        failedCounter.increment();
+        log.warn("Email to {} failed (attempt {}): {}", message.getRecipient(), message.getAttempts() + 1, error);
+    }
+
+    private static Map<Object, Exception> everyMessage(Map<SimpleMailMessage, MailMessage> byMail, Exception e) {
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        byMail.keySet().forEach(mail -> failures.put(mail, e));
+        return failures;
+    }
+
+    private static void throttle(long startedNanos) {
+        long remaining = TimeUnit.SECONDS.toNanos(1) - (System.nanoTime() - startedNanos);
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,64 +1,104 @@
 package com.krhscougarband.paymentportal.services;
 
+import com.krhscougarband.paymentportal.dto.InstrumentRuleRow;
+import com.krhscougarband.paymentportal.dto.OrderFilter;
+import com.krhscougarband.paymentportal.dto.OrderPageDto;
 import com.krhscougarband.paymentportal.dtos.CreateOrderRequest;
 import com.krhscougarband.paymentportal.dtos.OrderItemRequest;
 import com.krhscougarband.paymentportal.entities.*;
+import com.krhscougarband.paymentportal.exceptions.BadRequestException;
+import com.krhscougarband.paymentportal.exceptions.ResourceNotFoundException;
+import com.krhscougarband.paymentportal.orders.OrderNumberGenerator;
+import com.krhscougarband.paymentportal.orders.StockReservationService;
 import com.krhscougarband.paymentportal.repositories.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Service
 public class OrderService {
     private final OrderRepository orderRepository;
     private final ItemRepository itemRepository;
-    private final InstrumentItemRuleRepository instrumentItemRuleRepository;
+    private final InstrumentRuleCache instrumentRuleCache;
     private final UserProfileRepository userProfileRepository;
+    private final OrderNumberGenerator orderNumberGenerator;
+    private final StockReservationService stockReservationService;
+    private final SalesReportService salesReportService;
 
     public OrderService(OrderRepository orderRepository,
                         ItemRepository itemRepository,
-                        InstrumentItemRuleRepository instrumentItemRuleRepository,
-                        UserProfileRepository userProfileRepository) {
+                        InstrumentRuleCache instrumentRuleCache,
+                        UserProfileRepository userProfileRepository,
+                        OrderNumberGenerator orderNumberGenerator,
+                        StockReservationService stockReservationService,
+                        SalesReportService salesReportService) {
         this.orderRepository = orderRepository;
         this.itemRepository = itemRepository;
-        this.instrumentItemRuleRepository = instrumentItemRuleRepository;
+        this.instrumentRuleCache = instrumentRuleCache;
         this.userProfileRepository = userProfileRepository;
+        this.orderNumberGenerator = orderNumberGenerator;
+        this.stockReservationService = stockReservationService;
+        this.salesReportService = salesReportService;
     }
 
     @Transactional
     public Order createOrder(String userId, String userEmail, CreateOrderRequest request) {
         Order order = new Order();
+        order.setOrderNumber(orderNumberGenerator.next());
         order.setUserId(userId);
         order.setUserEmail(userEmail);
         order.setNotes(request.getNotes());
 
-        Map<Long, Integer> mergedQuantities = new HashMap<>();
+        Map<Long, Integer> mergedQuantities = new TreeMap<>();
         for (OrderItemRequest itemRequest : request.getItems()) {
             mergedQuantities.merge(itemRequest.getItemId(), itemRequest.getQuantity(), Integer::sum);
         }
 
-        UserProfile profile = userProfileRepository.findByUserEmail(userEmail).orElse(null);
-        if (profile != null && profile.getInstrument() != null && !profile.getInstrument().isBlank()) {
-            List<InstrumentItemRule> rules = instrumentItemRuleRepository
-                .findByInstrumentIgnoreCase(profile.getInstrument().trim());
-            for (InstrumentItemRule rule : rules) {
-                mergedQuantities.merge(rule.getItem().getId(), rule.getQuantity(), Integer::sum);
-            }
+        // Add the student's instrument kit
+        String instrument = userProfileRepository.findInstrumentByUserEmail(userEmail).orElse(null);
+        for (InstrumentRuleRow rule : instrumentRuleCache.rulesFor(instrument)) {
+            mergedQuantities.merge(rule.itemId(), rule.quantity(), Integer::sum);
         }
 
-        for (Map.Entry<Long, Integer> entry : mergedQuantities.entrySet()) {
-            Item item = itemRepository.findById(entry.getKey())
-                .orElseThrow(() -> new RuntimeException("Item not found: " + entry.getKey()));
+        // One fetch for the whole cart
+        Map<Long, Item> items = new HashMap<>();
+        for (Item item : itemRepository.findAllById(mergedQuantities.keySet())) {
+            items.put(item.getId(), item);
+        }
 
-            if (!item.getAvailable()) {
-                throw new RuntimeException("Item not available: " + item.getName());
+        List<String> problems = new ArrayList<>();
+        for (Long itemId : mergedQuantities.keySet()) {
+            Item item = items.get(itemId);
+            if (item == null) {
+                problems.add("Item not found: " + itemId);
+            } else if (!item.getAvailable()) {
+                problems.add("Item not available: " + item.getName());
             }
+        }
+        if (!problems.isEmpty()) {
+            throw new BadRequestException(String.join("; ", problems));
+        }
 
-            if (item.getStockQuantity() != null && item.getStockQuantity() < entry.getValue()) {
-                throw new RuntimeException("Insufficient stock for: " + item.getName());
+        // Stock the cart already holds is used first; the rest is taken with conditional
+        // updates, so concurrent checkouts cannot oversell. Ids are visited in ascending
+        // order so two carts always lock rows in the same order.
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Integer> held = stockReservationService.takeHolds(userEmail);
+        for (Map.Entry<Long, Integer> entry : mergedQuantities.entrySet()) {
+            Item item = items.get(entry.getKey());
+            int fromHold = Math.min(held.getOrDefault(item.getId(), 0), entry.getValue());
+            held.merge(item.getId(), -fromHold, Integer::sum);
+            int needed = entry.getValue() - fromHold;
+            if (item.getStockQuantity() != null && needed > 0
+                    && itemRepository.decrementStock(item.getId(), needed, now) == 0) {
+                problems.add("Insufficient stock for: " + item.getName());
+                continue;
             }
 
             OrderItem orderItem = new OrderItem();
@@ -66,50 +106,62 @@ public class OrderService {
             orderItem.setQuantity(entry.getValue());
             orderItem.setUnitPrice(item.getPrice());
             order.addItem(orderItem);
+        }
+        if (!problems.isEmpty()) {
+            // Rolls back the stock already taken for the other lines, and the holds
+            throw new BadRequestException(String.join("; ", problems));
+        }
 
-            if (item.getStockQuantity() != null) {
-                item.setStockQuantity(item.getStockQuantity() - entry.getValue());
-                itemRepository.save(item);
+        // Held more than was ordered: give the rest back
+        for (Map.Entry<Long, Integer> leftover : new TreeMap<>(held).entrySet()) {
+            if (leftover.getValue() > 0) {
+                itemRepository.restoreStock(leftover.getKey(), leftover.getValue(), now);
             }
         }
 
-        return orderRepository.save(order);
+        Order saved = orderRepository.save(order);
+        salesReportService.recordPlaced(saved);
+        return saved;
     }
 
     public List<Order> getOrdersForUser(String userEmail) {
         return orderRepository.findByUserEmailOrderByCreatedAtDesc(userEmail);
     }
 
-    public List<Order> getAllOrders() {
-        return orderRepository.findAllByOrderByCreatedAtDesc();
+    /**
+     * One page of orders for the admin screen, newest first, with lines and
+     * items loaded up front so serializing them runs no further queries
+     */
+    @Transactional(readOnly = true)
+    public OrderPageDto getOrdersPage(OrderFilter filter, int page, int size) {
+        List<Order> orders = orderRepository.findWithItems(orderRepository.findPageIds(filter, page * size, size));
+        long total = orderRepository.countByFilter(filter);
+        int totalPages = (int) ((total + size - 1) / size);
+        return new OrderPageDto(orders, page, size, total, totalPages);
     }
 
-    public Order getOrderByNumber(String orderNumber) {
+    /**
+     * Order numbers are sequential, so they are not a secret: only the order's
+     * owner or an admin may see it. Anyone else gets the same not-found as for
+     * a number that does not exist, so the numbers in use cannot be probed.
+     */
+    public Order getOrderByNumber(String orderNumber, String callerEmail, boolean admin) {
         return orderRepository.findByOrderNumber(orderNumber)
-            .orElseThrow(() -> new RuntimeException("Order not found: " + orderNumber));
+            .filter(order -> admin || order.getUserEmail().equals(callerEmail))
+            .orElseThrow(() -> new ResourceNotFoundException("Order not found: " + orderNumber));
     }
 
     @Transactional
-    public void cancelOrder(String orderNumber) {
-        Order order = orderRepository.findByOrderNumber(orderNumber)
-            .orElseThrow(() -> new RuntimeException("Order not found: " + orderNumber));
+    public void cancelOrder(String orderNumber, String callerEmail, boolean admin) {
+        Order order = getOrderByNumber(orderNumber, callerEmail, admin);
         
-        // Can only cancel pending or confirmed orders
-        if (order.getStatus() != Order.OrderStatus.PENDING && order.getStatus() != Order.OrderStatus.CONFIRMED) {
+        // Can only cancel pending or confirmed orders; the update re-checks so a double cancel restores stock once
+        if (orderRepository.cancelIfOpen(order.getId(), LocalDateTime.now()) == 0) {
             throw new RuntimeException("Cannot cancel order with status: " + order.getStatus());
         }
-        
-        // Restore stock for all items in the order
-        for (OrderItem item : order.getItems()) {
-            Item itemEntity = itemRepository.findById(item.getItem().getId())
-                .orElse(null);
-            if (itemEntity != null && itemEntity.getStockQuantity() != null) {
-                itemEntity.setStockQuantity(itemEntity.getStockQuantity() + item.getQuantity());
-                itemRepository.save(itemEntity);
-            }
-        }
-        
-        order.setStatus(Order.OrderStatus.CANCELLED);
-        orderRepository.save(order);
+
+        // Restore stock for all items in the order in one statement
+        itemRepository.restoreStockForOrder(order.getId(), LocalDateTime.now());
+        salesReportService.recordCancelled(order);
     }
-}
\ No newline at end of file
+}
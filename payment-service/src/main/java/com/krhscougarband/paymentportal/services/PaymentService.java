@@ -0,0 +1,77 @@
+package com.krhscougarband.paymentportal.services;
+
+import com.krhscougarband.paymentportal.entities.PaymentLog;
+import com.krhscougarband.paymentportal.entities.Plan;
+import com.krhscougarband.paymentportal.exceptions.ConflictException;
+import com.krhscougarband.paymentportal.exceptions.ResourceNotFoundException;
+import com.krhscougarband.paymentportal.repositories.PaymentLogRepository;
+import com.krhscougarband.paymentportal.repositories.PlanRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Applies payments to plans without a read-modify-write of amountPaid.
+ * The payment log insert is idempotent on transactionId, and the plan totals
+ * are bumped with a single UPDATE, so concurrent payments (e.g. a Square
+ * webhook racing a cash entry) only contend on the one plan row.
+ */
+@Service
+public class PaymentService {
+
+    private final PaymentLogRepository paymentLogRepository;
+    private final PlanRepository planRepository;
+    private final AuditService auditService;
+
+    public PaymentService(PaymentLogRepository paymentLogRepository,
+                          PlanRepository planRepository,
+                          AuditService auditService) {
+        this.paymentLogRepository = paymentLogRepository;
+        this.planRepository = planRepository;
+        this.auditService = auditService;
+    }
+
+    /**
+     * Record a PAID payment and add it to the plan's totals.
+     * A repeated transactionId returns the original log and leaves the totals alone.
+     * A transactionId already used for a different plan or amount is a conflict, not a retry.
+     */
+    @Transactional
+    public PaymentResult applyPayment(UUID planId, BigDecimal amount, String paymentMethod, String transactionId) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new IllegalArgumentException("Payment amount must be positive");
+        }
+        Plan plan = planRepository.findById(planId)
+                .orElseThrow(() -> new ResourceNotFoundException("Plan not found"));
+
+        PaymentLog payment;
+        if (transactionId == null || transactionId.isBlank()) {
+            payment = new PaymentLog();
+            payment.setPlan(plan);
+            payment.setAmount(amount);
+            payment.setPaymentMethod(paymentMethod);
+            payment.setStatus("PAID");
+            payment.setTimestamp(LocalDateTime.now());
+            paymentLogRepository.save(payment);
+        } else {
+            int inserted = paymentLogRepository.insertIfAbsent(UUID.randomUUID(), planId, amount, paymentMethod,
+                    "PAID", transactionId, LocalDateTime.now());
+            payment = paymentLogRepository.findByTransactionId(transactionId).orElseThrow();
+            if (inserted == 0) {
+                if (!payment.getPlan().getId().equals(planId) || payment.getAmount().compareTo(amount) != 0) {
+                    throw new ConflictException("Transaction ID already used for a different payment");
+                }
+                return new PaymentResult(payment, true);
+            }
+        }
+
+        planRepository.incrementAmountPaid(planId, amount, LocalDateTime.now());
+        auditService.logPayment(plan, amount, "PAID", payment.getTransactionId());
+        return new PaymentResult(payment, false);
+    }
+
+    public record PaymentResult(PaymentLog payment, boolean duplicate) {}
+}
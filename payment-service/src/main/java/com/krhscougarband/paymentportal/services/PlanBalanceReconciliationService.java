@@ -0,0 +1,56 @@
+package com.krhscougarband.paymentportal.services;
+
+import com.krhscougarband.paymentportal.repositories.PlanRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Keeps the materialized refund totals on plans honest.
+ * Payments and refund approvals update totalRefunded/netAmountPaid in their own
+ * transactions; this job recomputes them from refund_records and corrects any
+ * plan that has drifted (manual SQL fixes, pre-existing rows, bugs).
+ */
+@Service
+public class PlanBalanceReconciliationService {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanBalanceReconciliationService.class);
+
+    private final PlanRepository planRepository;
+    private final Counter correctedCounter;
+
+    @Value("${plans.reconcile.settle-ms:300000}")
+    private long settleMs;
+
+    public PlanBalanceReconciliationService(PlanRepository planRepository, MeterRegistry meterRegistry) {
+        this.planRepository = planRepository;
+        this.correctedCounter = Counter.builder("plans.balance.drift.corrected")
+                .description("Plans whose materialized refund totals had drifted and were recomputed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fill in totals for plans created before the columns existed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        reconcile();
+    }
+
+    @Scheduled(cron = "${plans.reconcile.cron:0 30 3 * * *}")
+    public void reconcile() {
+        int corrected = planRepository.reconcileRefundTotals(LocalDateTime.now().minusNanos(settleMs * 1_000_000));
+        correctedCounter.increment(corrected);
+        if (corrected > 0) {
+            log.warn("Corrected refund totals on {} plans that had drifted from refund_records", corrected);
+        }
+    }
+}
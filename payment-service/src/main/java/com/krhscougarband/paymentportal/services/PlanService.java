@@ -1,8 +1,15 @@
 package com.krhscougarband.paymentportal.services;
 
+import com.krhscougarband.paymentportal.dto.BulkPlanResultDto;
+import com.krhscougarband.paymentportal.dto.PendingRefundDto;
+import com.krhscougarband.paymentportal.dto.PendingRefundPageDto;
+import com.krhscougarband.paymentportal.dto.PlanBulkAction;
 import com.krhscougarband.paymentportal.dto.PlanDto;
+import com.krhscougarband.paymentportal.dto.PlanFilter;
+import com.krhscougarband.paymentportal.dto.PlanPageDto;
+import com.krhscougarband.paymentportal.dto.PlanSort;
+import com.krhscougarband.paymentportal.dto.PlanSummaryRow;
 import com.krhscougarband.paymentportal.dto.PlanUpdateDto;
-import com.krhscougarband.paymentportal.dto.RefundRecordDto;
 import com.krhscougarband.paymentportal.dto.RefundRequest;
 import com.krhscougarband.paymentportal.entities.Plan;
 import com.krhscougarband.paymentportal.entities.RefundRecord;
@@ -11,41 +18,68 @@ import com.krhscougarband.paymentportal.entities.User;
 import com.krhscougarband.paymentportal.exceptions.ResourceNotFoundException;
 import com.krhscougarband.paymentportal.exceptions.UnauthorizedException;
 import com.krhscougarband.paymentportal.exceptions.BadRequestException;
+import com.krhscougarband.paymentportal.exceptions.ConflictException;
 import com.krhscougarband.paymentportal.repositories.PlanRepository;
+import com.krhscougarband.paymentportal.repositories.RefundOutboxRepository;
 import com.krhscougarband.paymentportal.repositories.RefundRecordRepository;
 import com.krhscougarband.paymentportal.repositories.StudentRepository;
 import com.krhscougarband.paymentportal.repositories.UserRepository;
+import com.krhscougarband.paymentportal.refunds.RefundDecidedEvent;
+import com.krhscougarband.paymentportal.refunds.RefundSubmittedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 public class PlanService {
+    private static final Logger log = LoggerFactory.getLogger(PlanService.class);
+    private static final int BULK_CHUNK_SIZE = 500;
+
     private final PlanRepository planRepository;
     private final UserRepository userRepository;
     private final StudentRepository studentRepository;
     private final SquareBillingService squareBillingService;
     private final AuditService auditService;
     private final RefundRecordRepository refundRecordRepository;
+    private final RefundOutboxRepository refundOutboxRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public PlanService(PlanRepository planRepository,
                        UserRepository userRepository,
                        StudentRepository studentRepository,
                        SquareBillingService squareBillingService,
                        AuditService auditService,
-                       RefundRecordRepository refundRecordRepository) {
+                       RefundRecordRepository refundRecordRepository,
+                       RefundOutboxRepository refundOutboxRepository,
+                       ApplicationEventPublisher eventPublisher) {
         this.planRepository = planRepository;
         this.userRepository = userRepository;
         this.studentRepository = studentRepository;
         this.squareBillingService = squareBillingService;
         this.auditService = auditService;
         this.refundRecordRepository = refundRecordRepository;
+        this.refundOutboxRepository = refundOutboxRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -62,7 +96,7 @@ public class PlanService {
         if (dto.getFrequency() != null) plan.setFrequency(dto.getFrequency());
         if (dto.getCurrency() != null) plan.setCurrency(dto.getCurrency());
         plan.setUpdatedAt(LocalDateTime.now());
-        planRepository.save(plan);
+        saveChecked(plan);
         return mapToDto(plan);
     }
 
@@ -77,7 +111,7 @@ public class PlanService {
         plan.setStatus("CANCELLED");
         plan.setActive(false);
         plan.setUpdatedAt(LocalDateTime.now());
-        planRepository.save(plan);
+        saveChecked(plan);
     }
 
     @Transactional
@@ -91,7 +125,7 @@ public class PlanService {
         
         plan.setPaused(true);
         plan.setUpdatedAt(LocalDateTime.now());
-        planRepository.save(plan);
+        saveChecked(plan);
     }
     
     @Transactional
@@ -103,9 +137,14 @@ public class PlanService {
             throw new BadRequestException("Cannot resume an inactive plan");
         }
         
+        LocalDateTime now = LocalDateTime.now();
         plan.setPaused(false);
-        plan.setUpdatedAt(LocalDateTime.now());
-        planRepository.save(plan);
+        // Pick up at the next billing date rather than charging for the paused stretch
+        if (plan.getNextChargeAt() != null && !plan.getNextChargeAt().isAfter(now)) {
+            plan.setNextChargeAt(Plan.nextBoundaryAfter(plan.getNextChargeAt(), plan.getFrequency(), now));
+        }
+        plan.setUpdatedAt(now);
+        saveChecked(plan);
     }
 
     @Transactional
@@ -118,12 +157,16 @@ public class PlanService {
         }
         plan.setFrequency(frequency);
         plan.setUpdatedAt(LocalDateTime.now());
-        planRepository.save(plan);
+        saveChecked(plan);
         return plan;
     }
 
+    /**
+     * Record a refund request. Approvers are emailed and the refund is paid
+     * out in the background, so this only writes the SUBMITTED record.
+     */
     @Transactional
-    public void refundPlan(UUID planId, long amountCents, String refundMethod) {
+    public void refundPlan(UUID planId, long amountCents, String refundMethod, String initiatorEmail) {
         Plan plan = planRepository.findById(planId)
                 .orElseThrow(() -> new ResourceNotFoundException("Plan not found"));
         if (!plan.isActive() || "CANCELLED".equals(plan.getStatus())) {
@@ -145,37 +188,50 @@ public class PlanService {
         refund.setRefundMethod(refundMethod);
         refund.setRequestedAt(LocalDateTime.now());
         refund.setStatus("SUBMITTED");
+        refund.setInitiatedByUser(userRepository.findByEmail(initiatorEmail).orElse(null));
         refundRecordRepository.save(refund);
+        eventPublisher.publishEvent(new RefundSubmittedEvent(refund.getId()));
     }
 
     /**
      * Approve a submitted refund (mark as approved, do not modify amountPaid directly)
-     * The mapToDto method will calculate net amount paid by subtracting approved refunds
+     * The status flip and the plan's totalRefunded are both conditional updates, so
+     * concurrent approvals of the same refund, or of two refunds that together exceed
+     * what was paid, cannot both succeed; the loser rolls back with a 400.
+     * The payout itself is queued in refund_outbox and sent by the RefundExecutor.
      */
-    public void approveRefund(UUID refundId) {
+    @Transactional
+    public void approveRefund(UUID refundId, String approverEmail) {
         RefundRecord refund = refundRecordRepository.findById(refundId)
                 .orElseThrow(() -> new ResourceNotFoundException("Refund record not found"));
-        
-        if (!"SUBMITTED".equals(refund.getStatus())) {
+        User approver = userRepository.findByEmail(approverEmail).orElse(null);
+        LocalDateTime now = LocalDateTime.now();
+
+        if (refundRecordRepository.approveIfSubmitted(refundId, approver, now) == 0) {
             throw new BadRequestException("Only SUBMITTED refunds can be approved");
         }
-        
-        Plan plan = refund.getPlan();
-        BigDecimal currentAmount = plan.getAmountPaid() != null ? plan.getAmountPaid() : BigDecimal.ZERO;
-        
-        // Validate that we have enough paid amount to refund
-        if (refund.getRefundAmount().compareTo(currentAmount) > 0) {
+
+        // Note: amountPaid stays gross; the refund lands in totalRefunded/netAmountPaid
+        UUID planId = refund.getPlan().getId();
+        if (planRepository.incrementTotalRefunded(planId, refund.getRefundAmount(), now) == 0) {
             throw new BadRequestException("Refund amount cannot exceed amount paid");
         }
-        
-        // Mark refund as APPROVED and processed
-        // Note: Do NOT reduce amountPaid here - mapToDto will subtract approved refunds dynamically
-        refund.setStatus("APPROVED");
-        refund.setApprovedAt(LocalDateTime.now());
-        refund.setProcessedAt(LocalDateTime.now());
-        plan.setUpdatedAt(LocalDateTime.now());
-        planRepository.save(plan);
-        refundRecordRepository.save(refund);
+        refundOutboxRepository.enqueue(refundId, refundId.toString(), now);
+        auditService.record("REFUND_APPROVED", planId, refund.getRefundAmount(), "APPROVED", refundId.toString());
+        eventPublisher.publishEvent(new RefundDecidedEvent(refundId, true));
+    }
+
+    @Transactional
+    public void denyRefund(UUID refundId, String approverEmail) {
+        RefundRecord refund = refundRecordRepository.findById(refundId)
+                .orElseThrow(() -> new ResourceNotFoundException("Refund record not found"));
+        User approver = userRepository.findByEmail(approverEmail).orElse(null);
+
+        if (refundRecordRepository.denyIfSubmitted(refundId, approver, LocalDateTime.now()) == 0) {
+            throw new BadRequestException("Only SUBMITTED refunds can be denied");
+        }
+        auditService.record("REFUND_DENIED", refund.getPlan().getId(), refund.getRefundAmount(), "DENIED", refundId.toString());
+        eventPublisher.publishEvent(new RefundDecidedEvent(refundId, false));
     }
 
     public List<PlanDto> getPlansForUser(String email) {
@@ -186,12 +242,159 @@ public class PlanService {
             .orElseGet(List::of);
     }
 
-    public List<PlanDto> getAllPlans() {
-        return planRepository.findAll().stream()
-                .map(this::mapToDto)
-                .collect(Collectors.toList());
+    /**
+     * Keyset page of the admin plan listing. The cursor is opaque to callers and
+     * encodes the sort value and id of the last row on the previous page.
+     */
+    @Transactional(readOnly = true)
+    public PlanPageDto getPlansPage(PlanFilter filter, PlanSort sort, boolean descending, String cursor, int limit) {
+        Object afterValue = null;
+        UUID afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor decoded = decodeCursor(cursor, sort);
+            afterValue = decoded.value();
+            afterId = decoded.id();
+        }
+
+        // Fetch one extra row to know whether another page exists
+        List<PlanSummaryRow> rows = planRepository.findSummaryPage(filter, sort, descending, afterValue, afterId, limit + 1);
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+        List<PlanDto> items = rows.stream().map(this::summaryToDto).collect(Collectors.toList());
+
+        String nextCursor = null;
+        if (hasMore) {
+            PlanSummaryRow last = rows.get(rows.size() - 1);
+            nextCursor = encodeCursor(sort.valueOf(last), last.id());
+        }
+
+        // Totals only on the first page; unfiltered counts come from planner statistics
+        Long totalCount = null;
+        boolean estimated = false;
+        if (afterId == null) {
+            if (filter == null || filter.isEmpty()) {
+                long estimate = planRepository.estimatePlanCount();
+                if (estimate >= 0) {
+                    totalCount = estimate;
+                    estimated = true;
+                } else {
+                    totalCount = planRepository.count();
+                }
+            } else {
+                totalCount = planRepository.countSummaries(filter);
+            }
+        }
+        return new PlanPageDto(items, nextCursor, totalCount, estimated);
     }
 
+    /**
+     * Apply one state transition to many plans with set-based updates.
+     * Runs in one transaction so the audit events go out as a single outbox batch.
+     */
+    @Transactional
+    public BulkPlanResultDto bulkUpdate(PlanBulkAction action, List<String> planIds, PlanFilter filter, int maxPlans) {
+        List<BulkPlanResultDto.Item> results = new ArrayList<>();
+        Set<UUID> ids = new LinkedHashSet<>();
+        if (planIds != null && !planIds.isEmpty()) {
+            for (String raw : planIds) {
+                try {
+                    ids.add(UUID.fromString(raw));
+                } catch (IllegalArgumentException e) {
+                    results.add(new BulkPlanResultDto.Item(raw, "NOT_FOUND", "Invalid plan id"));
+                }
+            }
+        } else {
+            ids.addAll(planRepository.findIdsByFilter(filter, maxPlans + 1));
+        }
+        if (ids.size() > maxPlans) {
+            throw new BadRequestException("Bulk operations are limited to " + maxPlans + " plans");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<UUID> all = new ArrayList<>(ids);
+        Set<UUID> updated = new HashSet<>();
+        for (int from = 0; from < all.size(); from += BULK_CHUNK_SIZE) {
+            List<UUID> chunk = all.subList(from, Math.min(from + BULK_CHUNK_SIZE, all.size()));
+            updated.addAll(planRepository.applyBulkAction(action, chunk, now));
+        }
+
+        Set<UUID> existing = new HashSet<>();
+        List<UUID> notUpdated = all.stream().filter(id -> !updated.contains(id)).toList();
+        for (int from = 0; from < notUpdated.size(); from += BULK_CHUNK_SIZE) {
+            existing.addAll(planRepository.findExistingIds(
+                    notUpdated.subList(from, Math.min(from + BULK_CHUNK_SIZE, notUpdated.size()))));
+        }
+
+        int skipped = 0;
+        int notFound = (int) results.stream().filter(r -> "NOT_FOUND".equals(r.getResult())).count();
+        for (UUID id : all) {
+            if (updated.contains(id)) {
+                results.add(new BulkPlanResultDto.Item(id.toString(), "UPDATED", null));
+                auditService.record("PLAN_" + action.name(), id, null, action.name(), null);
+            } else if (existing.contains(id)) {
+                skipped++;
+                results.add(new BulkPlanResultDto.Item(id.toString(), "SKIPPED", "Plan is not eligible for " + action));
+            } else {
+                notFound++;
+                results.add(new BulkPlanResultDto.Item(id.toString(), "NOT_FOUND", "Plan not found"));
+            }
+        }
+        return new BulkPlanResultDto(action, updated.size(), skipped, notFound, results);
+    }
+
+    /**
+     * Save an edited plan now rather than at commit, so losing to a concurrent
+     * change (billing, payments and refunds bump the version with atomic
+     * UPDATEs) surfaces here as a 409 instead of an opaque commit failure.
+     */
+    private void saveChecked(Plan plan) {
+        try {
+            planRepository.saveAndFlush(plan);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ConflictException("Plan was changed by another request; reload it and try again");
+        }
+    }
+
+    /**
+     * Populate next_charge_at for plans created before the column existed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillNextChargeDates() {
+        int updated = planRepository.backfillNextChargeAt(LocalDateTime.now());
+        if (updated > 0) {
+            log.info("Backfilled next charge date on {} plans", updated);
+        }
+    }
+
+    private static String encodeCursor(Object value, UUID id) {
+        String raw = id + "|" + (value == null ? "N" : "V" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor, PlanSort sort) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            UUID id = UUID.fromString(raw.substring(0, sep));
+            String encoded = raw.substring(sep + 1);
+            if (encoded.startsWith("N")) {
+                return new Cursor(null, id);
+            }
+            String value = encoded.substring(1);
+            return new Cursor(switch (sort) {
+                case NEXT_CHARGE -> LocalDateTime.parse(value);
+                case AMOUNT_OWED -> new BigDecimal(value);
+                case STATUS -> value;
+            }, id);
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    private record Cursor(Object value, UUID id) {}
+
     @Transactional
     public PlanDto createPlan(PlanDto dto, String email) {
         User user = userRepository.findByEmail(email).orElseThrow();
@@ -215,53 +418,76 @@ public class PlanService {
     }
 
     /**
-     * Re-enable a cancelled plan (admin only)
+     * Re-enable a cancelled plan, or one stopped in ERROR by a declined card (admin only)
      */
     @Transactional
     public PlanDto reactivatePlan(UUID planId) {
         Plan plan = planRepository.findById(planId)
                 .orElseThrow(() -> new ResourceNotFoundException("Plan not found"));
-        if (!"CANCELLED".equals(plan.getStatus())) {
-            throw new BadRequestException("Only cancelled plans can be re-enabled");
+        LocalDateTime now = LocalDateTime.now();
+        if ("ERROR".equals(plan.getStatus())) {
+            // Continue on the plan's cycle from the next billing date; the declined charge is not retried
+            plan.setNextChargeAt(plan.getNextChargeAt() != null
+                    ? Plan.nextBoundaryAfter(plan.getNextChargeAt(), plan.getFrequency(), now)
+                    : plan.calculateNextChargeDate());
+        } else if ("CANCELLED".equals(plan.getStatus())) {
+            // Resume billing a period from now rather than catching up on the cancelled stretch
+            plan.setNextChargeAt(Plan.nextChargeAfter(now, plan.getFrequency()));
+        } else {
+            throw new BadRequestException("Only cancelled or errored plans can be re-enabled");
         }
         plan.setActive(true);
         plan.setStatus("ACTIVE");
-        plan.setUpdatedAt(LocalDateTime.now());
-        planRepository.save(plan);
+        plan.setUpdatedAt(now);
+        saveChecked(plan);
         // Optionally, re-enable subscription in Square here
         return mapToDto(plan);
     }
 
 
     /**
-     * Get all pending refunds awaiting approval by refund approver
+     * One page of refunds awaiting approval, oldest first
      */
-    public List<RefundRecordDto> getPendingRefunds() {
-        List<RefundRecord> records = refundRecordRepository.findByStatus("SUBMITTED");
-        return records.stream()
-                .map(this::refundRecordToDto)
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public PendingRefundPageDto getPendingRefunds(int page, int size) {
+        Page<PendingRefundDto> result = refundRecordRepository.findQueueByStatus("SUBMITTED", PageRequest.of(page, size));
+        return new PendingRefundPageDto(result.getContent(), page, size, result.getTotalElements(), result.getTotalPages());
     }
 
-    private RefundRecordDto refundRecordToDto(RefundRecord record) {
-        if (record == null) return null;
-        RefundRecordDto dto = new RefundRecordDto();
-        dto.setId(record.getId() != null ? record.getId().toString() : null);
-        dto.setPlanId(record.getPlan() != null ? record.getPlan().getId().toString() : null);
-        dto.setRefundAmount(record.getRefundAmount());
-        dto.setRefundReason(record.getRefundReason());
-        dto.setStatus(record.getStatus());
-        dto.setSquareRefundId(record.getSquareRefundId());
-        dto.setRefundMethod(record.getRefundMethod());
-        dto.setInitiatedByUserEmail(record.getInitiatedByUser() != null ? record.getInitiatedByUser().getEmail() : null);
-        dto.setApprovedByUserEmail(record.getApprovedByUser() != null ? record.getApprovedByUser().getEmail() : null);
-        dto.setRequestedAt(record.getRequestedAt());
-        dto.setApprovedAt(record.getApprovedAt());
-        dto.setProcessedAt(record.getProcessedAt());
-        dto.setNotes(record.getNotes());
+    private PlanDto summaryToDto(PlanSummaryRow row) {
+        PlanDto dto = new PlanDto();
+        dto.setId(row.id() != null ? row.id().toString() : null);
+        dto.setName(row.name());
+        dto.setAmount(row.amount());
+        dto.setTotalOwed(row.totalOwed());
+        BigDecimal amountPaid = row.amountPaid() != null ? row.amountPaid() : BigDecimal.ZERO;
+        BigDecimal totalRefunds = row.approvedRefunds() != null ? row.approvedRefunds() : BigDecimal.ZERO;
+        dto.setAmountPaid(amountPaid.subtract(totalRefunds));
+        dto.setFrequency(row.frequency());
+        dto.setCurrency(row.currency());
+        dto.setStatus(row.status());
+        dto.setPaused(row.paused());
+        dto.setStartDate(row.startDate() != null ? row.startDate().toString() : null);
+        LocalDateTime nextCharge = row.nextChargeAt() != null
+                ? row.nextChargeAt()
+                : Plan.calculateNextChargeDate(row.startDate(), row.status(), row.frequency());
+        dto.setNextChargeDate(nextCharge != null ? nextCharge.toString() : null);
+        dto.setStudentId(row.studentId());
+        dto.setStudentName(row.studentId() != null
+                ? row.studentFirstName() + (row.studentLastName() != null ? (" " + row.studentLastName()) : "")
+                : null);
+        dto.setUserEmail(row.ownerEmail());
         return dto;
     }
 
+    private static BigDecimal netAmountPaid(Plan plan) {
+        if (plan.getNetAmountPaid() != null) {
+            return plan.getNetAmountPaid();
+        }
+        // Not yet reconciled (pre-existing row): fall back to the gross amount
+        return plan.getAmountPaid() != null ? plan.getAmountPaid() : BigDecimal.ZERO;
+    }
+
     private PlanDto mapToDto(Plan plan) {
         if (plan == null) return null;
         PlanDto dto = new PlanDto();
@@ -270,19 +496,7 @@ public class PlanService {
         dto.setAmount(plan.getAmount());
         dto.setTotalOwed(plan.getTotalOwed());
         
-        // Calculate net amount paid by subtracting approved refunds
-        BigDecimal amountPaid = plan.getAmountPaid() != null ? plan.getAmountPaid() : BigDecimal.ZERO;
-        BigDecimal totalRefunds = BigDecimal.ZERO;
-        
-        if (plan.getRefundRecords() != null && !plan.getRefundRecords().isEmpty()) {
-            totalRefunds = plan.getRefundRecords().stream()
-                    .filter(r -> "APPROVED".equals(r.getStatus()))
-                    .map(RefundRecord::getRefundAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-        }
-        
-        BigDecimal netAmountPaid = amountPaid.subtract(totalRefunds);
-        dto.setAmountPaid(netAmountPaid);
+        dto.setAmountPaid(netAmountPaid(plan));
         
         dto.setFrequency(plan.getFrequency());
         dto.setCurrency(plan.getCurrency());
@@ -290,8 +504,8 @@ public class PlanService {
         dto.setPaused(plan.isPaused());
         dto.setStartDate(plan.getStartDate() != null ? plan.getStartDate().toString() : null);
         
-        // Calculate next charge date
-        LocalDateTime nextCharge = plan.calculateNextChargeDate();
+        // Persisted by the billing run; computed only for rows that predate the column
+        LocalDateTime nextCharge = plan.getNextChargeAt() != null ? plan.getNextChargeAt() : plan.calculateNextChargeDate();
         dto.setNextChargeDate(nextCharge != null ? nextCharge.toString() : null);
         
         dto.setStudentId(plan.getStudent() != null ? plan.getStudent().getId().toString() : null);
@@ -0,0 +1,155 @@
+package com.krhscougarband.paymentportal.services;
+
+import com.krhscougarband.paymentportal.dto.SalesReportRow;
+import com.krhscougarband.paymentportal.entities.Order;
+import com.krhscougarband.paymentportal.entities.SalesRollupState;
+import com.krhscougarband.paymentportal.repositories.SalesDailyRollupRepository;
+import com.krhscougarband.paymentportal.repositories.SalesRollupStateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Shop sales reporting. Order placement and cancellation fold each order into
+ * sales_daily_rollups inside the same transaction, so reports read a table
+ * with one row per item per day instead of scanning orders and order_items.
+ * Category totals are summed from the item rows at query time. Orders from
+ * before the rollups existed are folded in once at startup; each order is
+ * marked when it is counted, so the backfill and the live path never count
+ * the same order, and completion is recorded in sales_rollup_state.
+ */
+@Service
+public class SalesReportService {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesReportService.class);
+
+    public enum GroupBy { ITEM, CATEGORY }
+
+    private final SalesDailyRollupRepository rollupRepository;
+    private final SalesRollupStateRepository stateRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public SalesReportService(SalesDailyRollupRepository rollupRepository,
+                              SalesRollupStateRepository stateRepository,
+                              NamedParameterJdbcTemplate jdbcTemplate) {
+        this.rollupRepository = rollupRepository;
+        this.stateRepository = stateRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillRollups() {
+        if (stateRepository.existsById(SalesRollupState.SINGLETON_ID)) {
+            return;
+        }
+        int rows = rollupRepository.backfill();
+        stateRepository.markBackfilled(LocalDateTime.now());
+        if (rows > 0) {
+            log.info("Folded order history into {} daily sales rollup rows", rows);
+        }
+    }
+
+    // Call in the transaction that saved the order
+    public void recordPlaced(Order order) {
+        rollupRepository.addOrder(order.getId(), order.getCreatedAt().toLocalDate());
+    }
+
+    // Call in the transaction that cancelled the order
+    public void recordCancelled(Order order) {
+        rollupRepository.cancelOrder(order.getId(), order.getCreatedAt().toLocalDate());
+    }
+
+    /**
+     * Totals for order days from..to inclusive, largest net revenue first
+     * (or by day, then net revenue, when broken down by day).
+     */
+    public List<SalesReportRow> getReport(LocalDate from, LocalDate to, GroupBy groupBy, boolean byDay) {
+        String keys = groupBy == GroupBy.ITEM ? "r.item_id, i.name, r.category" : "r.category";
+        String select = (byDay ? "r.day, " : "CAST(NULL AS date) AS day, ") +
+                (groupBy == GroupBy.ITEM ? "r.item_id, i.name AS item_name, r.category, "
+                                         : "CAST(NULL AS bigint) AS item_id, CAST(NULL AS varchar) AS item_name, r.category, ");
+        String sql = "SELECT " + select +
+                "SUM(r.units_sold) AS units_sold, SUM(r.revenue) AS revenue, " +
+                "SUM(r.units_cancelled) AS units_cancelled, SUM(r.revenue_cancelled) AS revenue_cancelled " +
+                "FROM sales_daily_rollups r LEFT JOIN items i ON i.id = r.item_id " +
+                "WHERE r.day BETWEEN :from AND :to " +
+                "GROUP BY " + (byDay ? "r.day, " : "") + keys + " " +
+                "ORDER BY " + (byDay ? "r.day, " : "") +
+                "SUM(r.revenue) - SUM(r.revenue_cancelled) DESC, " + keys;
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Date.valueOf(from))
+                .addValue("to", Date.valueOf(to));
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> {
+            Date day = rs.getDate("day");
+            long itemId = rs.getLong("item_id");
+            boolean hasItem = !rs.wasNull();
+            long unitsSold = rs.getLong("units_sold");
+            long unitsCancelled = rs.getLong("units_cancelled");
+            BigDecimal revenue = orZero(rs.getBigDecimal("revenue"));
+            BigDecimal revenueCancelled = orZero(rs.getBigDecimal("revenue_cancelled"));
+            return new SalesReportRow(
+                    day != null ? day.toLocalDate() : null,
+                    hasItem ? itemId : null,
+                    rs.getString("item_name"),
+                    rs.getString("category"),
+                    unitsSold,
+                    revenue,
+                    unitsCancelled,
+                    revenueCancelled,
+                    unitsSold - unitsCancelled,
+                    revenue.subtract(revenueCancelled));
+        });
+    }
+
+    /**
+     * The same report as CSV, one row per line with a header
+     */
+    public String toCsv(List<SalesReportRow> rows) {
+        StringBuilder csv = new StringBuilder(
+                "day,item_id,item_name,category,units_sold,revenue_cents,units_cancelled,revenue_cancelled_cents,net_units,net_revenue_cents\n");
+        for (SalesReportRow row : rows) {
+            csv.append(row.getDay() != null ? row.getDay() : "").append(',')
+               .append(row.getItemId() != null ? row.getItemId() : "").append(',')
+               .append(csvField(row.getItemName())).append(',')
+               .append(csvField(row.getCategory())).append(',')
+               .append(row.getUnitsSold()).append(',')
+               .append(row.getRevenue().toPlainString()).append(',')
+               .append(row.getUnitsCancelled()).append(',')
+               .append(row.getRevenueCancelled().toPlainString()).append(',')
+               .append(row.getNetUnits()).append(',')
+               .append(row.getNetRevenue().toPlainString()).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        // Keep spreadsheets from evaluating names that look like formulas
+        if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
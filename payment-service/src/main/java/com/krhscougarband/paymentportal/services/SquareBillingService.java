@@ -1,5 +1,7 @@
 package com.krhscougarband.paymentportal.services;
 
+import com.krhscougarband.paymentportal.billing.PaymentGateway;
+import com.krhscougarband.paymentportal.billing.RefundResult;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -19,6 +21,12 @@ public class SquareBillingService {
     @Value("${square.environment:SANDBOX}")
     private String environment;
 
+    private final PaymentGateway paymentGateway;
+
+    public SquareBillingService(PaymentGateway paymentGateway) {
+        this.paymentGateway = paymentGateway;
+    }
+
     public void createSubscription(String customerId, String planId, BigDecimal amount) {
         // Stubbed no-op until Square integration is wired.
         // We log intent so later we can replay/implement real billing safely.
@@ -31,8 +39,14 @@ public class SquareBillingService {
                 subscriptionId, newAmount, frequency, environment, accessToken != null && !accessToken.isBlank());
     }
 
-    public void refundPayment(String paymentId, BigDecimal amount) {
-        log.info("[Square stub] refundPayment paymentId={} amount={} env={} tokenPresent={}",
-                paymentId, amount, environment, accessToken != null && !accessToken.isBlank());
+    /**
+     * Refund part of a Square payment. The idempotency key makes a retry of the
+     * same refund return the original result instead of refunding twice.
+     */
+    public RefundResult refundPayment(String paymentId, BigDecimal amount, String currency, String idempotencyKey) {
+        RefundResult result = paymentGateway.refund(paymentId, amount, currency, idempotencyKey);
+        log.info("refundPayment paymentId={} amount={} env={} success={} refundId={}",
+                paymentId, amount, environment, result.success(), result.refundId());
+        return result;
     }
 }
@@ -1,32 +1,69 @@
 package com.krhscougarband.paymentportal.services;
 
 import com.krhscougarband.paymentportal.repositories.RevokedTokenRepository;
-import org.springframework.beans.factory.annotation.Autowired;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Service to clean up expired revoked tokens from the database
- * Runs daily at 3 AM to remove tokens that have already expired
+ * Service to clean up expired revoked tokens from the database.
+ * Runs every few minutes and removes expired rows in small batches, so the
+ * revocation index stays small and no single delete holds locks for long.
  */
 @Service
 public class TokenCleanupService {
 
-    @Autowired
-    private RevokedTokenRepository revokedTokenRepository;
+    private static final Logger log = LoggerFactory.getLogger(TokenCleanupService.class);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final Counter deletedCounter;
+    private final AtomicLong tableSize = new AtomicLong();
+
+    @Value("${tokens.cleanup.batch-size:500}")
+    private int batchSize;
+
+    @Value("${tokens.cleanup.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    public TokenCleanupService(RevokedTokenRepository revokedTokenRepository, MeterRegistry meterRegistry) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.deletedCounter = Counter.builder("auth.revoked_tokens.deleted")
+                .description("Expired revoked-token rows removed by cleanup")
+                .register(meterRegistry);
+        // Refreshed after each cleanup pass rather than counting on every scrape
+        Gauge.builder("auth.revoked_tokens.size", tableSize, AtomicLong::get)
+                .description("Rows in revoked_tokens as of the last cleanup pass")
+                .register(meterRegistry);
+    }
 
     /**
-     * Clean up expired tokens from revoked_tokens table
-     * Runs daily at 3 AM server time
+     * Clean up expired tokens from revoked_tokens table.
+     * Each batch commits on its own; a run stops early once a batch comes back short.
      */
-    @Scheduled(cron = "0 0 3 * * ?")
-    @Transactional
+    @Scheduled(fixedDelayString = "${tokens.cleanup.interval-ms:900000}",
+               initialDelayString = "${tokens.cleanup.initial-delay-ms:60000}")
     public void cleanupExpiredTokens() {
         LocalDateTime cutoffTime = LocalDateTime.now();
-        revokedTokenRepository.deleteExpiredTokens(cutoffTime);
-        System.out.println("Cleaned up expired tokens older than: " + cutoffTime);
+        long deleted = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            int removed = revokedTokenRepository.deleteExpiredTokensBatch(cutoffTime, batchSize);
+            deleted += removed;
+            if (removed < batchSize) {
+                break;
+            }
+        }
+        deletedCounter.increment(deleted);
+        tableSize.set(revokedTokenRepository.count());
+        if (deleted > 0) {
+            log.info("Removed {} expired revoked tokens older than {}", deleted, cutoffTime);
+        }
     }
 }
@@ -418,9 +418,9 @@ async function openPaymentModal(planId) {
     modal.show();
 }
 
-async function loadPaymentHistory(planId) {
+async function loadPaymentHistory(planId, page = 0) {
     try {
-        const res = await fetch(`/payments/api/payments/plan/${planId}`, {
+        const res = await fetch(`/payments/api/payments/plan/${planId}?page=${page}&size=20`, {
             headers: { 'Authorization': `Bearer ${getToken()}` }
         });
         if (res.status === 401 || res.status === 403) {
@@ -433,15 +433,22 @@ async function loadPaymentHistory(planId) {
             document.getElementById('paymentHistoryList').innerHTML = '<p class="text-danger">Failed to load payments</p>';
             return;
         }
-        const payments = await res.json();
+        const history = await res.json();
+        const payments = history.items;
         const historyDiv = document.getElementById('paymentHistoryList');
 
-        if (payments.length === 0) {
+        if (page === 0 && payments.length === 0) {
             historyDiv.innerHTML = '<p class="text-muted">No payments recorded yet</p>';
             return;
         }
 
-        historyDiv.innerHTML = payments.map(payment => {
+        const summary = `
+            <div class="list-group-item bg-light small">
+                Paid <strong>$${(history.totalPaid / 100).toFixed(2)}</strong>
+                &middot; Refunded <strong>$${(history.totalRefunded / 100).toFixed(2)}</strong>
+                ${history.failedCount > 0 ? `&middot; <span class="text-danger">${history.failedCount} failed</span>` : ''}
+            </div>`;
+        const rows = payments.map(payment => {
             let extraInfo = '';
             if (payment.paymentMethod === 'CHECK' && payment.checkNumber) {
                 extraInfo = `<span class="ms-2 text-info">Check #: ${payment.checkNumber}</span>`;
@@ -463,6 +470,16 @@ async function loadPaymentHistory(planId) {
             </div>
             `;
         }).join('');
+        const more = history.page + 1 < history.totalPages
+            ? `<button class="list-group-item list-group-item-action text-center text-primary" onclick="loadPaymentHistory('${planId}', ${history.page + 1})">Load more</button>`
+            : '';
+
+        if (page === 0) {
+            historyDiv.innerHTML = summary + rows + more;
+        } else {
+            historyDiv.querySelector('button.list-group-item-action')?.remove();
+            historyDiv.insertAdjacentHTML('beforeend', rows + more);
+        }
     } catch (error) {
         console.error('Error loading payments:', error);
         document.getElementById('paymentHistoryList').innerHTML = '<p class="text-danger">Error loading payments</p>';
@@ -0,0 +1,150 @@
+package com.krhscougarband.paymentportal.billing;
+
+import com.krhscougarband.paymentportal.entities.Plan;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BillingEngineTest {
+
+    private static final String PAYMENT_LOG = "INSERT INTO payment_logs";
+    private static final String APPLY_CHARGE = "SET amount_paid =";
+    private static final String MARK_ERROR = "SET status = 'ERROR'";
+
+    // Every plan built for the same due date is the same plan and billing cycle
+    private static final UUID PLAN_ID = UUID.randomUUID();
+
+    private final InMemoryPaymentGateway gateway = new InMemoryPaymentGateway();
+    private final NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+
+    // Statement -> parameter sets of every batch run with it
+    private final Map<String, List<SqlParameterSource>> batches = new HashMap<>();
+    // Stands in for ux_payment_logs_transaction_id
+    private final Set<String> loggedTransactions = new HashSet<>();
+
+    private BillingEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            SqlParameterSource[] params = invocation.getArgument(1);
+            batches.computeIfAbsent(sql, key -> new ArrayList<>()).addAll(List.of(params));
+            int[] counts = new int[params.length];
+            for (int i = 0; i < params.length; i++) {
+                Object transactionId = params[i].hasValue("transactionId") ? params[i].getValue("transactionId") : null;
+                counts[i] = transactionId == null || loggedTransactions.add((String) transactionId) ? 1 : 0;
+            }
+            return counts;
+        });
+        engine = new BillingEngine(gateway, jdbcTemplate,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new SimpleMeterRegistry(), 1000, 4, 3);
+    }
+
+    @Test
+    void approvedChargeIsRecordedAndMovesToTheNextBillingDateAfterNow() {
+        Plan plan = duePlan(LocalDateTime.now().minusMonths(3).minusDays(2));
+
+        engine.bill(List.of(plan));
+
+        assertThat(gateway.charges()).hasSize(1);
+        assertThat(statements(PAYMENT_LOG)).singleElement()
+                .satisfies(log -> assertThat(log.getValue("status")).isEqualTo("PAID"));
+        assertThat(statements(MARK_ERROR)).isEmpty();
+        SqlParameterSource applied = statements(APPLY_CHARGE).get(0);
+        LocalDateTime next = (LocalDateTime) applied.getValue("nextChargeAt");
+        assertThat(next).isAfter(LocalDateTime.now()).isBefore(LocalDateTime.now().plusMonths(1));
+    }
+
+    @Test
+    void declinedCardMarksThePlanErrorWithoutApplyingACharge() {
+        Plan plan = duePlan(LocalDateTime.now().minusDays(1));
+        gateway.declineCharges(plan.getId());
+
+        engine.bill(List.of(plan));
+
+        assertThat(statements(PAYMENT_LOG)).singleElement()
+                .satisfies(log -> assertThat(log.getValue("status")).isEqualTo("FAILED"));
+        assertThat(statements(MARK_ERROR)).singleElement()
+                .satisfies(update -> assertThat(update.getValue("planId")).isEqualTo(plan.getId()));
+        assertThat(statements(APPLY_CHARGE)).isEmpty();
+    }
+
+    @Test
+    void requestErrorLeavesThePlanUnchanged() {
+        PaymentGateway rejecting = new PaymentGateway() {
+            @Override
+            public ChargeResult charge(ChargeRequest request) {
+                throw new GatewayRequestException(401, "UNAUTHORIZED");
+            }
+
+            @Override
+            public RefundResult refund(String transactionId, BigDecimal amount, String currency, String idempotencyKey) {
+                throw new UnsupportedOperationException("Not used by the billing run");
+            }
+        };
+        engine = new BillingEngine(rejecting, jdbcTemplate,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new SimpleMeterRegistry(), 1000, 4, 3);
+
+        engine.bill(List.of(duePlan(LocalDateTime.now().minusDays(1))));
+
+        assertThat(batches.values()).allSatisfy(params -> assertThat(params).isEmpty());
+    }
+
+    @Test
+    void retriedCycleReusesTheKeyAndIsNotRecordedTwice() {
+        LocalDateTime due = LocalDateTime.now().minusDays(1);
+
+        // Same cycle billed again, e.g. after a crash before the plan row was advanced
+        engine.bill(List.of(duePlan(due)));
+        Plan retry = duePlan(due);
+        engine.bill(List.of(retry));
+
+        assertThat(gateway.charges()).hasSize(1);
+        assertThat(statements(PAYMENT_LOG)).hasSize(2);
+        assertThat(statements(APPLY_CHARGE)).singleElement()
+                .satisfies(update -> assertThat(update.getValue("amount")).isEqualTo(retry.getAmount()));
+    }
+
+    private List<SqlParameterSource> statements(String fragment) {
+        return batches.entrySet().stream()
+                .filter(entry -> entry.getKey().contains(fragment))
+                .flatMap(entry -> entry.getValue().stream())
+                .toList();
+    }
+
+    private static Plan duePlan(LocalDateTime nextChargeAt) {
+        Plan plan = new Plan();
+        plan.setId(PLAN_ID);
+        plan.setAmount(new BigDecimal("2500"));
+        plan.setFrequency("MONTHLY");
+        plan.setCurrency("USD");
+        plan.setStatus("ACTIVE");
+        plan.setActive(true);
+        plan.setSquareCardId("ccof:test");
+        plan.setNextChargeAt(nextChargeAt);
+        return plan;
+    }
+}